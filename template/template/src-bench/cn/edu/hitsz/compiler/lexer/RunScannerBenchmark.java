@@ -0,0 +1,189 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 比较 {@link RunScanner} 各后端的正确性与速度
+ * <br>
+ * 先在随机生成的源程序 (含大小写字母, 数字, 各种空白, 标点, 非 ASCII 的字母与数字, 以及跨越向量宽度的长串) 上,
+ * 将标量后端与 {@link RunScanner#best()} 驱动的 {@link DFALexer} 的结果与一个逐字符分类的参考词法分析器逐一比较
+ * (词法单元的类型, 位置, 长度以及符号表中标识符的顺序), 再分别在普通的源程序与长标识符, 长空白的源程序上计时.
+ * <br>
+ * 在项目根目录 (即 data 的上级目录) 下运行, 需要 src 与 src-vector 都已编译到类路径上:
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp out cn.edu.hitsz.compiler.lexer.RunScannerBenchmark
+ * </pre>
+ * 不加 {@code --add-modules} 时 best() 退回标量后端, 两者的计时应当相同.
+ */
+public class RunScannerBenchmark {
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        final var best = RunScanner.best();
+        System.out.println("best backend: " + (best == RunScanner.SCALAR ? "scalar" : best.getClass().getSimpleName()));
+
+        final var scalarLexer = DFALexer.fromTokenKinds(RunScanner.SCALAR);
+        final var bestLexer = DFALexer.fromTokenKinds(best);
+        final var random = new Random(20240521);
+        for (int round = 0; round < CORRECTNESS_ROUNDS; round++) {
+            final var source = randomSource(random, 1 + random.nextInt(4000));
+            final var expected = referenceLex(source);
+            check(source, expected, lex(scalarLexer, source), "scalar", round);
+            check(source, expected, lex(bestLexer, source), "best", round);
+        }
+        System.out.println("correctness: %d random sources agree with the reference lexer".formatted(CORRECTNESS_ROUNDS));
+
+        bench("typical program", typicalSource(), scalarLexer, bestLexer);
+        bench("long runs", longRunSource(random), scalarLexer, bestLexer);
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private record Lexed(List<String> tokens, List<String> symbols) {
+    }
+
+    private static Lexed lex(DFALexer lexer, char[] source) {
+        final var tokens = new TokenBuffer(source, source.length / 4);
+        final var symbols = new SymbolTable();
+        lexer.lex(source, 0, source.length, tokens, symbols);
+        final var described = new ArrayList<String>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            described.add(tokens.getKind(i).getIdentifier() + "@" + tokens.getStart(i) + "+" + tokens.getLength(i));
+        }
+        return new Lexed(described, new ArrayList<>(symbols.symbolTable.keySet()));
+    }
+
+    /**
+     * 与最初的词法分析器相同地逐字符分类: 空白跳过, 单字符标点, 字母串 (关键字或标识符), 数字串
+     */
+    private static Lexed referenceLex(char[] source) {
+        final var tokens = new ArrayList<String>();
+        final var symbols = new ArrayList<String>();
+        int i = 0;
+        while (i < source.length) {
+            final var ch = source[i];
+            if (ch == ' ' || ch == '\r' || ch == '\n' || ch == '\t') {
+                i++;
+            } else if (Character.isLetter(ch)) {
+                final var start = i;
+                while (i < source.length && Character.isLetter(source[i])) {
+                    i++;
+                }
+                final var text = new String(source, start, i - start);
+                if (TokenKind.isAllowed(text) && !text.equals("id") && !text.equals("IntConst")) {
+                    tokens.add(text + "@" + start + "+0");
+                } else {
+                    tokens.add("id@" + start + "+" + (i - start));
+                    if (!symbols.contains(text)) {
+                        symbols.add(text);
+                    }
+                }
+            } else if (Character.isDigit(ch)) {
+                final var start = i;
+                while (i < source.length && Character.isDigit(source[i])) {
+                    i++;
+                }
+                tokens.add("IntConst@" + start + "+" + (i - start));
+            } else {
+                final var kind = ch == ';' ? "Semicolon" : String.valueOf(ch);
+                tokens.add(kind + "@" + i + "+0");
+                i++;
+            }
+        }
+        return new Lexed(tokens, symbols);
+    }
+
+    private static void check(char[] source, Lexed expected, Lexed actual, String backend, int round) {
+        if (!expected.equals(actual)) {
+            int first = 0;
+            while (first < Math.min(expected.tokens.size(), actual.tokens.size())
+                && expected.tokens.get(first).equals(actual.tokens.get(first))) {
+                first++;
+            }
+            throw new RuntimeException("%s backend disagrees with the reference lexer in round %d at token %d of \"%s\""
+                .formatted(backend, round, first, new String(source)));
+        }
+    }
+
+    /**
+     * 两个后端交替运行, 先各自预热, 再各取多轮中最快的一次, 避免先运行者承担即时编译的开销
+     */
+    private static void bench(String name, char[] source, DFALexer scalarLexer, DFALexer bestLexer) {
+        long scalar = Long.MAX_VALUE;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ROUNDS + BENCH_ROUNDS; i++) {
+            final var scalarTime = time(scalarLexer, source);
+            final var bestTime = time(bestLexer, source);
+            if (i >= WARMUP_ROUNDS) {
+                scalar = Math.min(scalar, scalarTime);
+                best = Math.min(best, bestTime);
+            }
+        }
+        System.out.println("%-16s %8d chars  scalar %7.2f ms  best %7.2f ms  speedup %.2fx"
+            .formatted(name, source.length, scalar / 1e6, best / 1e6, (double) scalar / best));
+    }
+
+    private static long time(DFALexer lexer, char[] source) {
+        final var tokens = new TokenBuffer(source, source.length / 4);
+        final var symbols = new SymbolTable();
+        final var begin = System.nanoTime();
+        lexer.lex(source, 0, source.length, tokens, symbols);
+        return System.nanoTime() - begin;
+    }
+
+    private static char[] randomSource(Random random, int length) {
+        final var builder = new StringBuilder(length + 256);
+        while (builder.length() < length) {
+            // 串长有时超过向量宽度, 以覆盖整向量与尾部两条路径
+            final var run = random.nextInt(8) == 0 ? 1 + random.nextInt(100) : 1 + random.nextInt(6);
+            switch (random.nextInt(8)) {
+                case 0 -> builder.append(BLANKS.charAt(random.nextInt(BLANKS.length())));
+                case 1 -> appendRun(builder, random, run, BLANKS);
+                case 2, 3 -> appendRun(builder, random, run, LETTERS);
+                case 4 -> appendRun(builder, random, run, DIGITS);
+                case 5 -> builder.append(PUNCTUATIONS.charAt(random.nextInt(PUNCTUATIONS.length())));
+                case 6 -> builder.append(KEYWORDS[random.nextInt(KEYWORDS.length)]).append(' ');
+                default -> builder.append(NON_ASCII.charAt(random.nextInt(NON_ASCII.length())));
+            }
+        }
+        return builder.toString().toCharArray();
+    }
+
+    private static void appendRun(StringBuilder builder, Random random, int length, String alphabet) {
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+    }
+
+    private static char[] typicalSource() {
+        final var statement = "result = alpha * beta - ( 3 + beta ) * ( gamma - alpha );\n";
+        return statement.repeat(TARGET_LENGTH / statement.length()).toCharArray();
+    }
+
+    private static char[] longRunSource(Random random) {
+        final var builder = new StringBuilder(TARGET_LENGTH + 256);
+        while (builder.length() < TARGET_LENGTH) {
+            builder.append(" ".repeat(16 + random.nextInt(48)));
+            appendRun(builder, random, 32 + random.nextInt(96), LETTERS);
+            builder.append(" = ");
+            appendRun(builder, random, 32 + random.nextInt(96), DIGITS);
+            builder.append(";\n");
+        }
+        return builder.toString().toCharArray();
+    }
+
+    private static final int CORRECTNESS_ROUNDS = 2000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int BENCH_ROUNDS = 30;
+    private static final int TARGET_LENGTH = 4 << 20;
+    private static final String BLANKS = " \t\r\n";
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String DIGITS = "0123456789";
+    private static final String PUNCTUATIONS = "=,;+-*/()";
+    private static final String[] KEYWORDS = {"int", "return"};
+    // 非 ASCII 的字母与数字 (Character.isLetter / isDigit 为真), 以及大于 0x7FFF 的字母, 它们都必须由标量路径处理
+    private static final String NON_ASCII = "éÅßλЖ汉字Ａ٣१０";
+}
@@ -0,0 +1,165 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 测量 {@link LRAutomaton#build(TableGenerator.Mode, ForkJoinPool)} 在不同线程数下的耗时, 并检查结果与串行构造完全相同
+ * <br>
+ * 实验文法太小, 不足以看出并行的效果, 因此以码点文件中的终结符合成一个较大的文法:
+ * 若干层优先级依次递增的二元表达式 (E_i -> E_i op E_{i+1} | E_{i+1}, 运算符在 + - * / 与逗号中轮换),
+ * 最内层为括号, 标识符, 常量与函数调用, 外面再套上与实验文法相同的语句. 层数越多, 规范 LR(1) 的状态越多.
+ * <br>
+ * 在项目根目录 (即 data 的上级目录) 下运行, 参数依次为表达式的层数 (默认 200) 与最大线程数 (默认为处理器数与 8 中较大者):
+ * <pre>
+ * java -cp out cn.edu.hitsz.compiler.parser.table.LRAutomatonBenchmark 200 8
+ * </pre>
+ * 线程数超过处理器数时只能看出调度与同步的开销, 看不出加速.
+ */
+public class LRAutomatonBenchmark {
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        final var levels = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LEVELS;
+        final var maxThreads = args.length > 1
+            ? Integer.parseInt(args[1])
+            : Math.max(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_THREADS);
+
+        final var grammar = new SyntheticGrammar(levels);
+        System.out.println("grammar: %d levels, %d productions, %d non-terminals, %d processors"
+            .formatted(levels, grammar.productions.size(), grammar.nonTerminals.size(),
+                Runtime.getRuntime().availableProcessors()));
+
+        // 先让串行与并行两条路径都经过即时编译, 否则先测的一方吃亏
+        final var warmupPool = new ForkJoinPool(1);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            grammar.newAutomaton().build(TableGenerator.Mode.LR1);
+            grammar.newAutomaton().build(TableGenerator.Mode.LR1, warmupPool);
+        }
+        warmupPool.shutdown();
+
+        for (final var mode : new TableGenerator.Mode[]{TableGenerator.Mode.SLR, TableGenerator.Mode.LR1}) {
+            final var serial = grammar.newAutomaton();
+            serial.build(mode);
+            final var expected = fingerprint(serial);
+            final var serialTime = bestOf(() -> grammar.newAutomaton().build(mode));
+            System.out.println("%-4s %6d states  serial %8.1f ms".formatted(mode, serial.stateCount(), serialTime / 1e6));
+
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                final var pool = new ForkJoinPool(threads);
+                try {
+                    final var parallel = grammar.newAutomaton();
+                    parallel.build(mode, pool);
+                    if (parallel.stateCount() != serial.stateCount() || fingerprint(parallel) != expected) {
+                        throw new RuntimeException("Parallel construction with %d threads differs from serial one in %s"
+                            .formatted(threads, mode));
+                    }
+                    final var time = bestOf(() -> grammar.newAutomaton().build(mode, pool));
+                    System.out.println("%-4s %6d states  %2d threads %8.1f ms  speedup %.2fx"
+                        .formatted(mode, parallel.stateCount(), threads, time / 1e6, (double) serialTime / time));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 合成的文法, 终结符取自码点文件
+     */
+    private static final class SyntheticGrammar {
+        SyntheticGrammar(int levels) {
+            final var start = nonTerminal("S'");
+            final var program = nonTerminal("P");
+            final var statements = nonTerminal("S_list");
+            final var statement = nonTerminal("S");
+            final var expressions = new ArrayList<NonTerminal>();
+            for (int i = 0; i <= levels; i++) {
+                expressions.add(nonTerminal("E" + i));
+            }
+            final var arguments = nonTerminal("Args");
+            final var top = expressions.get(0);
+            final var atom = expressions.get(levels);
+
+            production(start, program);
+            production(program, statements);
+            production(statements, statement, token("Semicolon"), statements);
+            production(statements, statement, token("Semicolon"));
+            production(statement, token("int"), token("id"));
+            production(statement, token("id"), token("="), top);
+            production(statement, token("return"), top);
+            for (int i = 0; i < levels; i++) {
+                final var operator = token(OPERATORS[i % OPERATORS.length]);
+                production(expressions.get(i), expressions.get(i), operator, expressions.get(i + 1));
+                production(expressions.get(i), expressions.get(i + 1));
+            }
+            production(atom, token("("), top, token(")"));
+            production(atom, token("id"));
+            production(atom, token("IntConst"));
+            production(atom, token("id"), token("("), arguments, token(")"));
+            production(arguments, top);
+            production(arguments, top, token("Semicolon"), arguments);
+        }
+
+        LRAutomaton newAutomaton() {
+            final var analysis = new GrammarAnalysis(productions, nonTerminals, terminals);
+            return new LRAutomaton(productions, analysis);
+        }
+
+        private NonTerminal nonTerminal(String name) {
+            final var result = new NonTerminal(name);
+            nonTerminals.add(result);
+            return result;
+        }
+
+        private void production(NonTerminal head, Term... body) {
+            productions.add(new Production(productions.size(), head, List.of(body)));
+        }
+
+        private static TokenKind token(String name) {
+            return TokenKind.fromString(name);
+        }
+
+        private final List<Production> productions = new ArrayList<>();
+        private final List<NonTerminal> nonTerminals = new ArrayList<>();
+        private final List<TokenKind> terminals = new ArrayList<>(TokenKind.allAllowedTokenKinds().values());
+    }
+
+    /**
+     * @return 由各状态的转移与闭包中的项目 (含向前看符号) 算出的指纹, 状态编号不同时指纹也不同
+     */
+    private static long fingerprint(LRAutomaton automaton) {
+        final var hash = new long[]{automaton.stateCount()};
+        for (int state = 0; state < automaton.stateCount(); state++) {
+            for (int symbol = 0; symbol < automaton.symbolCount(); symbol++) {
+                hash[0] = hash[0] * 31 + automaton.transition(state, symbol);
+            }
+            automaton.forEachItem(state, (item, lookahead) -> hash[0] = hash[0] * 31 + item * 17L + Arrays.hashCode(lookahead));
+        }
+        return hash[0];
+    }
+
+    private static long bestOf(Runnable build) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ROUNDS + BENCH_ROUNDS; i++) {
+            final var begin = System.nanoTime();
+            build.run();
+            final var time = System.nanoTime() - begin;
+            if (i >= WARMUP_ROUNDS) {
+                best = Math.min(best, time);
+            }
+        }
+        return best;
+    }
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/", ","};
+    private static final int DEFAULT_LEVELS = 200;
+    private static final int DEFAULT_MAX_THREADS = 8;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int BENCH_ROUNDS = 10;
+}
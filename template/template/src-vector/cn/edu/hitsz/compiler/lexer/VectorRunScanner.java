@@ -0,0 +1,69 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 {@code jdk.incubator.vector} 的扫描后端
+ * <br>
+ * 每次将源程序中的一整个向量宽度 (平台首选宽度, AVX2 下为 16 个字符, AVX-512 下为 32 个字符) 载入为 short 向量,
+ * 并行地判断各字符是否属于该类别, 第一个不属于的通道就是类别边界. 剩下不足一个向量宽度的尾部留给调用者逐字符扫描.
+ * <br>
+ * 该类依赖孵化模块, 单独放在 src-vector 中, 编译与运行时都需要 {@code --add-modules jdk.incubator.vector};
+ * 只有 {@link RunScanner#best()} 通过反射加载它, 所以缺少该模块时其余代码照常编译与运行.
+ */
+final class VectorRunScanner implements RunScanner {
+    @Override
+    public int skipBlanks(char[] source, int from, int to) {
+        int i = from;
+        for (final int bound = to - LANES; i <= bound; i += LANES) {
+            final var chars = ShortVector.fromCharArray(SPECIES, source, i);
+            final var blank = chars.eq((short) ' ')
+                .or(chars.eq((short) '\n'))
+                .or(chars.eq((short) '\r'))
+                .or(chars.eq((short) '\t'));
+            if (!blank.allTrue()) {
+                return i + blank.not().firstTrue();
+            }
+        }
+        return i;
+    }
+
+    @Override
+    public int skipLetters(char[] source, int from, int to) {
+        int i = from;
+        for (final int bound = to - LANES; i <= bound; i += LANES) {
+            // 将 ASCII 大写字母折叠为小写后只需比较一个区间; 非 ASCII 字符折叠后仍不在 'a'..'z' 中
+            final var lower = ShortVector.fromCharArray(SPECIES, source, i).or((short) 0x20);
+            final var letter = inRange(lower, 'a', 'z');
+            if (!letter.allTrue()) {
+                return i + letter.not().firstTrue();
+            }
+        }
+        return i;
+    }
+
+    @Override
+    public int skipDigits(char[] source, int from, int to) {
+        int i = from;
+        for (final int bound = to - LANES; i <= bound; i += LANES) {
+            final var digit = inRange(ShortVector.fromCharArray(SPECIES, source, i), '0', '9');
+            if (!digit.allTrue()) {
+                return i + digit.not().firstTrue();
+            }
+        }
+        return i;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    // 大于 0x7FFF 的字符作为 short 是负数, 与 ASCII 区间比较时自然落在区间之外
+    private static VectorMask<Short> inRange(ShortVector chars, char low, char high) {
+        return chars.compare(VectorOperators.GE, (short) low).and(chars.compare(VectorOperators.LE, (short) high));
+    }
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+}
@@ -1,6 +1,7 @@
 package cn.edu.hitsz.compiler;
 
 import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.asm.DirectAssemblyGenerator;
 import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.IRGenerator;
@@ -8,16 +9,22 @@ import cn.edu.hitsz.compiler.parser.ProductionCollector;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
-import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.table.LRTableCache;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 public class Main {
     public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--fast")) {
+            compileFast();
+            return;
+        }
+
         // 构建符号表以供各部分使用
         TokenKind.loadTokenKinds();
         final var symbolTable = new SymbolTable();
@@ -31,9 +38,8 @@ public class Main {
         final var tokens = lexer.getTokens();
         symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
 
-        // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
+        // 读取第三方程序构造的 LR 分析表, 优先使用编译好的二进制缓存
+        final var lrTable = LRTableCache.load(FilePathConfig.LR_TABLE_CACHE_PATH, FilePathConfig.LR1_TABLE_PATH);
 
         // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
         // final var tableGenerator = new TableGenerator();
@@ -46,6 +52,9 @@ public class Main {
         parser.loadTokens(tokens);
         parser.loadLRTable(lrTable);
 
+        // // 或将分析表特化为生成的 Java 代码, 运行环境没有 Java 编译器时仍使用查表驱动
+        // ParserSpecializer.compile(lrTable).ifPresent(parser::loadSpecializedParser);
+
         // 加入生成规约列表的 Observer
         final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
         parser.registerObserver(productionCollector);
@@ -58,8 +67,18 @@ public class Main {
         final var irGenerator = new IRGenerator();
         parser.registerObserver(irGenerator);
 
+        // // 或记录分析事件, 之后用 ParseEventLog 读取日志并交给 ParseEventReplayer, 跳过词法与语法分析直接重新运行各 Observer
+        // final var eventRecorder = new ParseEventRecorder(tokens);
+        // parser.registerObserver(eventRecorder);
+
+        // 跳过只传递值的单产生式规约, 仍关心它们的观察者 (如 productionCollector 与 eventRecorder) 照常收到通知
+        parser.setUnitReductionBypass(true);
+        // 表达式交给算符优先的快速通道分析, 其余部分仍然查表; 观察者收到的事件及其状态与逐步查表相同
+        parser.setExpressionFastPath(true);
+
         // 执行语法解析并在解析过程中依次调用各 Observer
         parser.run();
+        // eventRecorder.dump(FilePathConfig.PARSE_EVENT_LOG_PATH);
 
         // 各 Observer 输出结果
         productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
@@ -77,4 +96,30 @@ public class Main {
         asmGenerator.run();
         asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
     }
+
+    /**
+     * 快速编译模式 (命令行参数 --fast): 词法分析之后在语法分析的同时直接生成汇编,
+     * 不构造 IR, 也不输出词法单元, 符号表, 规约列表, 中间代码与模拟执行结果
+     */
+    private static void compileFast() {
+        TokenKind.loadTokenKinds();
+        final var symbolTable = new SymbolTable();
+
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
+        lexer.run();
+
+        final var lrTable = LRTableCache.load(FilePathConfig.LR_TABLE_CACHE_PATH, FilePathConfig.LR1_TABLE_PATH);
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(lexer.getTokens());
+        parser.loadLRTable(lrTable);
+
+        final var asmGenerator = new DirectAssemblyGenerator();
+        parser.registerObserver(asmGenerator);
+        parser.setUnitReductionBypass(true);
+        parser.setExpressionFastPath(true);
+        parser.run();
+
+        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+    }
 }
@@ -0,0 +1,394 @@
+package cn.edu.hitsz.compiler.asm;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.SemanticActions;
+import cn.edu.hitsz.compiler.parser.ValueStack;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在语法分析过程中直接生成 RISC-V 汇编的观察者, 供快速编译模式使用
+ * <br>
+ * 与 IRGenerator + {@link AssemblyGenerator} 的两遍流程不同, 该类在每次规约时直接发出汇编指令, 不构造 Instruction 列表:
+ * <ul>
+ *     <li>共享属性栈 ({@link ValueStack}) 中每个表达式的值是立即数, 源程序变量, 或是存放中间结果的临时值;</li>
+ *     <li>两个操作数都是立即数时直接折叠为立即数, 一个操作数是 12 位以内的立即数时使用 addi;</li>
+ *     <li>寄存器在发出指令的同时分配: 临时值只会被使用一次, 用完立即释放寄存器; 没有空闲寄存器时,
+ *     把最久未使用的值溢出到栈帧中, 再次使用时重新载入;</li>
+ *     <li>赋值语句的右部是临时值时, 直接把它所在的寄存器改记为被赋值的变量, 不发出 mv.</li>
+ * </ul>
+ * 与 {@link AssemblyGenerator#loadIR} 相同, return 之后的语句不再生成代码. 生成的程序在 a0 中的结果与正常流程相同.
+ */
+public class DirectAssemblyGenerator implements ActionObserver {
+
+    /**
+     * 可分配的寄存器: 调用者保存的 t0-t6 与 a1-a7, a0 留作返回值
+     */
+    enum Register {
+        t0, t1, t2, t3, t4, t5, t6, a1, a2, a3, a4, a5, a6, a7
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        // 词法单元由属性栈记录, 无需额外动作
+    }
+
+    @Override
+    public boolean caresAboutShift() {
+        return false;
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        if (!returned) {
+            actions.run(production);
+            Arrays.fill(locked, false);
+        }
+    }
+
+    @Override
+    public boolean caresAbout(Production production) {
+        return actions.handles(production);
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        // no action
+    }
+
+    @Override
+    public boolean caresAboutAccept() {
+        return false;
+    }
+
+    @Override
+    public boolean usesValueStack() {
+        return true;
+    }
+
+    @Override
+    public void setValueStack(ValueStack stack) {
+        this.values = stack;
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+        // 变量的类型检查由 SemanticAnalyzer 负责, 代码生成不需要符号表
+    }
+
+    /**
+     * @return 生成的汇编指令, 包括按最终栈帧大小补上的栈帧调整
+     */
+    public List<String> getAssembly() {
+        final var result = new ArrayList<String>(asmInstructions.size() + 3);
+        result.add(".text");
+        if (frameSize > 0) {
+            result.add("\taddi sp, sp, -%d".formatted(frameSize));
+        }
+        result.addAll(asmInstructions);
+        if (frameSize > 0) {
+            result.add("\taddi sp, sp, %d".formatted(frameSize));
+        }
+        return result;
+    }
+
+    /**
+     * 输出汇编代码到文件
+     *
+     * @param path 输出文件路径
+     */
+    public void dump(String path) {
+        FileUtils.writeLines(path, getAssembly());
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private enum Operator {
+        ADD, SUB, MUL
+    }
+
+    /**
+     * 存放中间结果的临时值. 它只会被使用一次, 位置直接记在对象中, 不需要按名字查表
+     */
+    private static final class Temp implements IRValue {
+        // 所在的寄存器序号, 被溢出时为 -1
+        int register = -1;
+        // 被溢出时在栈帧中的偏移, 未溢出过时为 -1
+        int slot = -1;
+    }
+
+    /**
+     * 生成二元运算, 操作数都是立即数时直接折叠
+     *
+     * @return 运算结果: 立即数或新的临时值
+     */
+    private IRValue binary(Operator operator, IRValue lhs, IRValue rhs) {
+        if (lhs instanceof IRImmediate l && rhs instanceof IRImmediate r) {
+            return IRImmediate.of(switch (operator) {
+                case ADD -> l.getValue() + r.getValue();
+                case SUB -> l.getValue() - r.getValue();
+                case MUL -> l.getValue() * r.getValue();
+            });
+        }
+
+        // 加法可交换, 把立即数换到右边
+        if (operator == Operator.ADD && lhs instanceof IRImmediate) {
+            final var swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        }
+
+        // 右操作数是 12 位以内的立即数时使用 addi, 减法取相反数
+        if (rhs instanceof IRImmediate r && operator != Operator.MUL) {
+            final var immediate = operator == Operator.ADD ? r.getValue() : -(long) r.getValue();
+            if (fitsImmediate(immediate)) {
+                final var source = operand(lhs);
+                release(lhs, source);
+                final var result = new Temp();
+                emit("\taddi " + allocate(result) + ", " + source + ", " + immediate);
+                return result;
+            }
+        }
+
+        final var left = operand(lhs);
+        final var right = operand(rhs);
+        release(lhs, left);
+        release(rhs, right);
+        final var result = new Temp();
+        final var mnemonic = switch (operator) {
+            case ADD -> "add";
+            case SUB -> "sub";
+            case MUL -> "mul";
+        };
+        emit("\t" + mnemonic + " " + allocate(result) + ", " + left + ", " + right);
+        return result;
+    }
+
+    private void assign(IRVariable variable, IRValue value) {
+        if (value instanceof IRImmediate immediate) {
+            emit("\tli " + define(variable) + ", " + immediate.getValue());
+        } else if (value instanceof Temp) {
+            // 临时值只会被使用一次, 直接把它的寄存器改记为被赋值的变量
+            final var source = operand(value);
+            release(value, source);
+            forget(variable);
+            place(variable, source.ordinal());
+            touch(source.ordinal());
+        } else if (!value.equals(variable)) {
+            final var source = operand(value);
+            emit("\tmv " + define(variable) + ", " + source);
+        }
+    }
+
+    private void returnValue(IRValue value) {
+        if (value instanceof IRImmediate immediate) {
+            emit("\tli a0, " + immediate.getValue());
+        } else {
+            emit("\tmv a0, " + operand(value));
+        }
+        returned = true;
+    }
+
+    /**
+     * 将操作数放入寄存器: 变量与临时值载入 (或已在) 寄存器, 立即数用 li 放入一个不属于任何值的寄存器
+     */
+    private Register operand(IRValue value) {
+        if (value instanceof IRImmediate immediate) {
+            final var register = allocate(null);
+            emit("\tli " + register + ", " + immediate.getValue());
+            return register;
+        }
+
+        final var register = registerOf(value);
+        if (register >= 0) {
+            touch(register);
+            return REGISTERS[register];
+        }
+        final var loaded = allocate(value);
+        final var slot = slotOf(value);
+        if (slot >= 0) {
+            emit("\tlw " + loaded + ", " + slot + "(sp)");
+        }
+        return loaded;
+    }
+
+    /**
+     * @return 即将被整体赋值的变量的寄存器, 不需要载入旧值
+     */
+    private Register define(IRVariable variable) {
+        final var register = registerOf(variable);
+        if (register < 0) {
+            return allocate(variable);
+        }
+        touch(register);
+        return REGISTERS[register];
+    }
+
+    /**
+     * 分配一个寄存器给 value (为 null 时只用于存放立即数); 没有空闲寄存器时溢出最久未使用的值.
+     * 本次规约中已经用到的寄存器被锁定, 不会被溢出.
+     */
+    private Register allocate(IRValue value) {
+        int chosen = -1;
+        for (int r = 0; r < holders.length; r++) {
+            if (holders[r] == null && !locked[r]) {
+                chosen = r;
+                break;
+            }
+        }
+        if (chosen < 0) {
+            long oldest = Long.MAX_VALUE;
+            for (int r = 0; r < holders.length; r++) {
+                if (!locked[r] && lastUse[r] < oldest) {
+                    oldest = lastUse[r];
+                    chosen = r;
+                }
+            }
+            if (chosen < 0) {
+                throw new RuntimeException("No enough registers!");
+            }
+            spill(chosen);
+        }
+
+        if (value != null) {
+            place(value, chosen);
+        }
+        touch(chosen);
+        return REGISTERS[chosen];
+    }
+
+    private void touch(int r) {
+        locked[r] = true;
+        lastUse[r] = ++clock;
+    }
+
+    private void spill(int r) {
+        final var victim = holders[r];
+        if (victim == null) {
+            return;
+        }
+        var slot = slotOf(victim);
+        if (slot < 0) {
+            slot = freeSlots.isEmpty() ? allocateSlot() : freeSlots.remove(freeSlots.size() - 1);
+            if (victim instanceof Temp temp) {
+                temp.slot = slot;
+            } else {
+                slotOf.put((IRVariable) victim, slot);
+            }
+        }
+        emit("\tsw " + REGISTERS[r] + ", " + slot + "(sp)");
+        forget(victim);
+    }
+
+    private int allocateSlot() {
+        final var offset = frameSize;
+        frameSize += Integer.BYTES;
+        return offset;
+    }
+
+    /**
+     * 操作数已被读入寄存器后调用: 临时值与立即数只使用一次, 释放它们的寄存器 (本条指令的结果可以复用) 与栈帧槽位
+     */
+    private void release(IRValue value, Register register) {
+        if (value instanceof IRVariable) {
+            return;
+        }
+        if (value instanceof Temp temp && temp.slot >= 0) {
+            freeSlots.add(temp.slot);
+        }
+        holders[register.ordinal()] = null;
+        locked[register.ordinal()] = false;
+    }
+
+    private int registerOf(IRValue value) {
+        if (value instanceof Temp temp) {
+            return temp.register;
+        }
+        final var register = registerOf.get((IRVariable) value);
+        return register == null ? -1 : register;
+    }
+
+    private int slotOf(IRValue value) {
+        if (value instanceof Temp temp) {
+            return temp.slot;
+        }
+        final var slot = slotOf.get((IRVariable) value);
+        return slot == null ? -1 : slot;
+    }
+
+    private void place(IRValue value, int r) {
+        holders[r] = value;
+        if (value instanceof Temp temp) {
+            temp.register = r;
+        } else {
+            registerOf.put((IRVariable) value, r);
+        }
+    }
+
+    /**
+     * 值离开它所在的寄存器 (被溢出, 或变量即将被重新赋值)
+     */
+    private void forget(IRValue value) {
+        final int register;
+        if (value instanceof Temp temp) {
+            register = temp.register;
+            temp.register = -1;
+        } else {
+            final var boxed = registerOf.remove((IRVariable) value);
+            register = boxed == null ? -1 : boxed;
+        }
+        if (register >= 0) {
+            holders[register] = null;
+        }
+    }
+
+    private static boolean fitsImmediate(long value) {
+        return value >= -2048 && value <= 2047;
+    }
+
+    private void emit(String instruction) {
+        asmInstructions.add(instruction);
+    }
+
+    private static final Register[] REGISTERS = Register.values();
+
+    private ValueStack values;
+    private boolean returned = false;
+    // 各产生式的代码生成动作, 与 IRGenerator 的动作一一对应
+    private final SemanticActions actions = new SemanticActions()
+        .on("S -> id = E", p -> assign(IRVariable.named(values.text(0)), values.value(2)))
+        .on("S -> return E", p -> returnValue(values.value(1)))
+        .on("E -> E + A", p -> values.setValue(binary(Operator.ADD, values.value(0), values.value(2))))
+        .on("E -> E - A", p -> values.setValue(binary(Operator.SUB, values.value(0), values.value(2))))
+        .on("A -> A * B", p -> values.setValue(binary(Operator.MUL, values.value(0), values.value(2))))
+        .on("B -> ( E )", p -> values.setValue(values.value(1)))
+        .on("B -> id", p -> values.setValue(IRVariable.named(values.text(0))))
+        .on("B -> IntConst", p -> values.setValue(IRImmediate.of(Integer.parseInt(values.text(0)))));
+
+    // 寄存器中存放的值, 以及源程序变量所在的寄存器序号 (临时值的位置记在 Temp 中)
+    private final IRValue[] holders = new IRValue[REGISTERS.length];
+    private final Map<IRVariable, Integer> registerOf = new HashMap<>();
+    // 本次规约中已经用到的寄存器, 不能被溢出
+    private final boolean[] locked = new boolean[REGISTERS.length];
+    // 各寄存器最近一次被使用的时刻, 用于选择溢出的寄存器
+    private final long[] lastUse = new long[REGISTERS.length];
+    private long clock = 0;
+    // 溢出过的变量在栈帧中的偏移; 临时值的槽位在使用后回收
+    private final Map<IRVariable, Integer> slotOf = new HashMap<>();
+    private final List<Integer> freeSlots = new ArrayList<>();
+    private int frameSize = 0;
+
+    private final List<String> asmInstructions = new ArrayList<>();
+}
@@ -0,0 +1,280 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 表驱动的词法分析自动机
+ * <br>
+ * 自动机由码点文件 (coding_map.csv) 中允许的 TokenKind 与下面的词法规约 (token spec) 构造:
+ * <ul>
+ *     <li>{@code id} 为标识符, 形如 字母+, 与原先逐字符分类的词法分析器相同 (标识符中不含数字)</li>
+ *     <li>{@code IntConst} 为整数常量, 形如 数字+</li>
+ *     <li>其余 TokenKind 的词素就是其标识符本身 (标识符与词素不同的, 如 {@code Semicolon}, 记录在别名表中)</li>
+ * </ul>
+ * 词素形如标识符的 TokenKind 视为关键字, 在识别出标识符之后通过完美哈希表 {@link KeywordTable} 区分;
+ * 其余的视为标点, 按字符构造成一棵前缀树并入自动机.
+ * <br>
+ * 扫描时先通过字符类别表将字符映射为类别, 再查 {@code int[][]} 转移表, 每个字符的开销仅为几次数组读取.
+ * 自动机采用最长匹配 (maximal munch): 一直转移到无路可走为止, 然后回退到最后一个接受状态.
+ * <br>
+ * 空白, 标识符与整数常量的最长匹配就是一段同类字符, 它们不走转移表, 而是先由 {@link RunScanner} 成段跳过其中的 ASCII 部分,
+ * 再按字符类别表逐字符扫描剩下的部分; 运行环境提供向量模块时该后端一次比较一整个向量的字符.
+ */
+public class DFALexer {
+    /**
+     * @return 根据已读入的码点文件构造出的自动机
+     */
+    public static DFALexer fromTokenKinds() {
+        return fromTokenKinds(RunScanner.best());
+    }
+
+    /**
+     * @param runScanner 成段扫描同类字符的后端
+     * @return 根据已读入的码点文件构造出的, 使用指定扫描后端的自动机
+     */
+    static DFALexer fromTokenKinds(RunScanner runScanner) {
+        return new DFALexer(TokenKind.allAllowedTokenKinds(), runScanner);
+    }
+
+    /**
+     * 从 {@code from} 开始对 {@code source} 执行词法分析直到 {@code to}, 识别出的词法单元依次加入 {@code tokens},
+     * 识别出的标识符同时加入符号表
+     *
+     * @param source      源程序字符缓冲区, 应与 {@code tokens} 所引用的相同
+     * @param from        起始位置 (含)
+     * @param to          终止位置 (不含)
+     * @param tokens      存放结果的缓冲区
+     * @param symbolTable 符号表
+     */
+    public void lex(char[] source, int from, int to, TokenBuffer tokens, SymbolTable symbolTable) {
+        int pos = from;
+        while (true) {
+            // 快速路径: 词法单元之间的空白直接按字符类别跳过, 不必作为一个完整的匹配过程走一遍自动机
+            pos = runEnd(source, pos, to, CLASS_BLANK);
+            if (pos >= to) {
+                break;
+            }
+
+            // 标识符与整数常量只在同类字符上自转移, 最长匹配即为整段同类字符
+            final var firstClass = charClass[source[pos]];
+            if (firstClass == CLASS_LETTER) {
+                final var end = runEnd(source, pos, to, CLASS_LETTER);
+                addIdentifierOrKeyword(source, pos, end - pos, tokens, symbolTable);
+                pos = end;
+                continue;
+            }
+            if (firstClass == CLASS_DIGIT) {
+                final var end = runEnd(source, pos, to, CLASS_DIGIT);
+                tokens.add(intConstKind, pos, end - pos);
+                pos = end;
+                continue;
+            }
+
+            // 最长匹配: 记录最后经过的接受状态及其位置
+            int state = START;
+            int acceptState = DEAD;
+            int acceptEnd = pos;
+            for (int i = pos; i < to; i++) {
+                state = transitions[state][charClass[source[i]]];
+                if (state == DEAD) {
+                    break;
+                }
+                if (accepting[state]) {
+                    acceptState = state;
+                    acceptEnd = i + 1;
+                }
+            }
+
+            if (acceptState == DEAD) {
+                throw new RuntimeException("Unexpected character '%c' at offset %d".formatted(source[pos], pos));
+            }
+
+            final var length = acceptEnd - pos;
+            if (acceptState == IDENTIFIER) {
+                addIdentifierOrKeyword(source, pos, length, tokens, symbolTable);
+            } else if (acceptState == INT_CONST) {
+                tokens.add(intConstKind, pos, length);
+            } else if (acceptState != BLANK) {
+                tokens.add(punctuations[acceptState], pos, 0);
+            }
+
+            pos = acceptEnd;
+        }
+    }
+
+    /**
+     * 先逐字符扫描至多 {@link #SHORT_RUN} 个字符, 仍未到达类别边界时才交给扫描后端成段跳过, 再逐字符扫描剩下的部分;
+     * 大多数词法单元与空白都很短, 这样它们不必付出载入一整个向量的开销
+     *
+     * @return 从 pos 开始第一个类别不是 charClassOfRun 的位置, 不超过 to
+     */
+    private int runEnd(char[] source, int pos, int to, int charClassOfRun) {
+        final var shortEnd = Math.min(to, pos + SHORT_RUN);
+        var end = skipRun(source, pos, shortEnd, charClassOfRun);
+        if (end < shortEnd || end == to) {
+            return end;
+        }
+        end = switch (charClassOfRun) {
+            case CLASS_BLANK -> runScanner.skipBlanks(source, end, to);
+            case CLASS_LETTER -> runScanner.skipLetters(source, end, to);
+            default -> runScanner.skipDigits(source, end, to);
+        };
+        return skipRun(source, end, to, charClassOfRun);
+    }
+
+    /**
+     * @return 从 pos 开始第一个类别不是 charClassOfRun 的位置, 不超过 to
+     */
+    private int skipRun(char[] source, int pos, int to, int charClassOfRun) {
+        while (pos < to && charClass[source[pos]] == charClassOfRun) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private void addIdentifierOrKeyword(char[] source, int pos, int length, TokenBuffer tokens, SymbolTable symbolTable) {
+        // 关键字与标识符都直接在源程序缓冲区上查找, 只有首次出现的标识符才会构造字符串
+        final var keyword = keywords.lookup(source, pos, length);
+        if (keyword != null) {
+            tokens.add(keyword, pos, 0);
+        } else {
+            tokens.add(identifierKind, pos, length);
+            symbolTable.intern(source, pos, length);
+        }
+    }
+
+    //==================== 以下为自动机的构造 ==============================//
+
+    // 由规则而非字面量定义的 TokenKind
+    private static final String IDENTIFIER_KIND = "id";
+    private static final String INT_CONST_KIND = "IntConst";
+    // 标识符与词素不同的字面量 TokenKind
+    private static final Map<String, String> LEXEME_ALIASES = Map.of("Semicolon", ";");
+
+    // 字符类别, 标点字符的类别从 FIRST_PUNCTUATION_CLASS 开始依次分配
+    private static final int CLASS_ERROR = 0;
+    private static final int CLASS_BLANK = 1;
+    private static final int CLASS_LETTER = 2;
+    private static final int CLASS_DIGIT = 3;
+    private static final int FIRST_PUNCTUATION_CLASS = 4;
+    // 短于该长度的同类字符串只逐字符扫描, 不交给扫描后端
+    private static final int SHORT_RUN = 8;
+
+    // 固定的状态, 标点前缀树的状态从 FIRST_PUNCTUATION_STATE 开始依次分配
+    private static final int DEAD = -1;
+    private static final int START = 0;
+    private static final int BLANK = 1;
+    private static final int IDENTIFIER = 2;
+    private static final int INT_CONST = 3;
+    private static final int FIRST_PUNCTUATION_STATE = 4;
+
+    private final byte[] charClass = new byte[Character.MAX_VALUE + 1];
+    private final int[][] transitions;
+    private final boolean[] accepting;
+    // 每个标点状态所接受的 TokenKind, 非标点状态为 null
+    private final TokenKind[] punctuations;
+    private final KeywordTable keywords;
+    private final TokenKind identifierKind;
+    private final TokenKind intConstKind;
+    private final RunScanner runScanner;
+
+    private DFALexer(Map<String, TokenKind> allowed, RunScanner runScanner) {
+        this.runScanner = runScanner;
+        identifierKind = TokenKind.fromString(IDENTIFIER_KIND);
+        intConstKind = TokenKind.fromString(INT_CONST_KIND);
+
+        // 按词法规约将各 TokenKind 分为关键字和标点
+        final var keywordLexemes = new HashMap<String, TokenKind>();
+        final var punctuationLexemes = new HashMap<String, TokenKind>();
+        for (final var kind : allowed.values()) {
+            final var id = kind.getIdentifier();
+            if (kind == TokenKind.eof() || id.equals(IDENTIFIER_KIND) || id.equals(INT_CONST_KIND)) {
+                continue;
+            }
+
+            final var lexeme = LEXEME_ALIASES.getOrDefault(id, id);
+            if (isIdentifierLike(lexeme)) {
+                keywordLexemes.put(lexeme, kind);
+            } else {
+                punctuationLexemes.put(lexeme, kind);
+            }
+        }
+
+        keywords = KeywordTable.build(keywordLexemes);
+
+        // 构造字符类别表
+        int classCount = FIRST_PUNCTUATION_CLASS;
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+            if (ch == ' ' || ch == '\r' || ch == '\n' || ch == '\t') {
+                charClass[ch] = CLASS_BLANK;
+            } else if (Character.isLetter(ch)) {
+                charClass[ch] = CLASS_LETTER;
+            } else if (Character.isDigit(ch)) {
+                charClass[ch] = CLASS_DIGIT;
+            } else {
+                charClass[ch] = CLASS_ERROR;
+            }
+        }
+        for (final var lexeme : punctuationLexemes.keySet()) {
+            for (final var ch : lexeme.toCharArray()) {
+                if (charClass[ch] == CLASS_ERROR) {
+                    charClass[ch] = (byte) classCount++;
+                } else if (charClass[ch] < FIRST_PUNCTUATION_CLASS) {
+                    throw new RuntimeException("Illegal character in punctuation: " + lexeme);
+                }
+            }
+        }
+
+        // 构造标点的前缀树, 每个结点就是一个状态
+        final var rows = new ArrayList<int[]>();
+        final var kinds = new ArrayList<TokenKind>();
+        for (int state = 0; state < FIRST_PUNCTUATION_STATE; state++) {
+            rows.add(newRow(classCount));
+            kinds.add(null);
+        }
+        for (final var entry : punctuationLexemes.entrySet()) {
+            int state = START;
+            for (final var ch : entry.getKey().toCharArray()) {
+                final var row = rows.get(state);
+                if (row[charClass[ch]] == DEAD) {
+                    row[charClass[ch]] = rows.size();
+                    rows.add(newRow(classCount));
+                    kinds.add(null);
+                }
+                state = row[charClass[ch]];
+            }
+            kinds.set(state, entry.getValue());
+        }
+
+        // 由规则定义的部分
+        rows.get(START)[CLASS_BLANK] = BLANK;
+        rows.get(START)[CLASS_LETTER] = IDENTIFIER;
+        rows.get(START)[CLASS_DIGIT] = INT_CONST;
+        rows.get(BLANK)[CLASS_BLANK] = BLANK;
+        rows.get(IDENTIFIER)[CLASS_LETTER] = IDENTIFIER;
+        rows.get(INT_CONST)[CLASS_DIGIT] = INT_CONST;
+
+        transitions = rows.toArray(new int[0][]);
+        punctuations = kinds.toArray(new TokenKind[0]);
+        accepting = new boolean[transitions.length];
+        accepting[BLANK] = accepting[IDENTIFIER] = accepting[INT_CONST] = true;
+        for (int state = FIRST_PUNCTUATION_STATE; state < accepting.length; state++) {
+            accepting[state] = punctuations[state] != null;
+        }
+    }
+
+    private static int[] newRow(int classCount) {
+        final var row = new int[classCount];
+        Arrays.fill(row, DEAD);
+        return row;
+    }
+
+    private static boolean isIdentifierLike(String lexeme) {
+        return !lexeme.isEmpty() && lexeme.chars().allMatch(Character::isLetter);
+    }
+}
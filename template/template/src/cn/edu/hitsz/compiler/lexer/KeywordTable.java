@@ -0,0 +1,97 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Map;
+
+/**
+ * 关键字的完美哈希表
+ * <br>
+ * 在构造时为码点文件中的关键字集合搜索一个没有冲突的哈希函数 (乘数与表大小), 查找时直接对源程序缓冲区中的字符区间求哈希,
+ * 至多比较一个槽位, 整个过程不构造任何字符串.
+ */
+final class KeywordTable {
+    /**
+     * @param keywords 关键字词素到 TokenKind 的映射
+     * @return 为该关键字集合构造出的完美哈希表
+     * @throws RuntimeException 找不到没有冲突的哈希函数
+     */
+    static KeywordTable build(Map<String, TokenKind> keywords) {
+        final var maxLength = keywords.keySet().stream().mapToInt(String::length).max().orElse(0);
+
+        // 从不小于关键字数量两倍的 2 的幂开始, 依次尝试各个奇数乘数, 直到各关键字落在互不相同的槽位上
+        for (int size = Integer.highestOneBit(Math.max(keywords.size(), 1) * 2 - 1) << 1; size <= MAX_SIZE; size <<= 1) {
+            for (int multiplier = 1; multiplier < MAX_MULTIPLIER; multiplier += 2) {
+                final var table = new KeywordTable(multiplier, size - 1, maxLength);
+                if (table.tryPut(keywords)) {
+                    return table;
+                }
+            }
+        }
+
+        throw new RuntimeException("Can not find a perfect hash for keywords: " + keywords.keySet());
+    }
+
+    /**
+     * @param source 字符缓冲区
+     * @param offset 区间起始位置
+     * @param length 区间长度
+     * @return 该区间对应的关键字, 若不是关键字则返回 null
+     */
+    TokenKind lookup(char[] source, int offset, int length) {
+        if (length > maxLength) {
+            return null;
+        }
+
+        final var slot = hash(source, offset, length);
+        final var key = keys[slot];
+        if (key == null || key.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != source[offset + i]) {
+                return null;
+            }
+        }
+
+        return kinds[slot];
+    }
+
+    private int hash(char[] source, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = h * multiplier + source[i];
+        }
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private boolean tryPut(Map<String, TokenKind> keywords) {
+        for (final var entry : keywords.entrySet()) {
+            final var key = entry.getKey().toCharArray();
+            final var slot = hash(key, 0, key.length);
+            if (keys[slot] != null) {
+                return false;
+            }
+
+            keys[slot] = key;
+            kinds[slot] = entry.getValue();
+        }
+
+        return true;
+    }
+
+    private static final int MAX_SIZE = 1 << 16;
+    private static final int MAX_MULTIPLIER = 1 << 10;
+
+    private final int multiplier;
+    private final int mask;
+    private final int maxLength;
+    private final char[][] keys;
+    private final TokenKind[] kinds;
+
+    private KeywordTable(int multiplier, int mask, int maxLength) {
+        this.multiplier = multiplier;
+        this.mask = mask;
+        this.maxLength = maxLength;
+        this.keys = new char[mask + 1][];
+        this.kinds = new TokenKind[mask + 1];
+    }
+}
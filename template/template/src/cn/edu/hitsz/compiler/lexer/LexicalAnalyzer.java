@@ -4,11 +4,14 @@ import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.StreamSupport;
 
 /**
@@ -21,8 +24,12 @@ import java.util.stream.StreamSupport;
  */
 public class LexicalAnalyzer {
     private final SymbolTable symbolTable;
-    public String sourceString = "";
-    public List<Token> tokens = new ArrayList<>();
+    // 源程序的字符缓冲区, 有效内容为 [0, sourceLength), 词法分析直接在其上原地扫描
+    private char[] source = new char[0];
+    private int sourceLength = 0;
+    private TokenBuffer tokens = new TokenBuffer(source);
+    // 由码点文件构造的表驱动自动机, 在第一次使用时构造
+    private DFALexer lexer = null;
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
@@ -35,14 +42,15 @@ public class LexicalAnalyzer {
      */
     public void loadFile(String path) {
         // 词法分析前的缓冲区实现
-        try (BufferedReader br = new BufferedReader(new FileReader(path))){
-            String line;
-            while ((line = br.readLine()) != null) {
-                sourceString += line;
-            }
-            //System.out.println(sourceString);
+        // 将文件映射到内存后一次性解码为字符数组, 整个文件只被复制一次, 加载的开销与文件大小成线性关系
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final var chars = StandardCharsets.UTF_8.decode(mapped);
+            // decode 返回的 CharBuffer 以堆数组为后备, 直接复用该数组而不再拷贝
+            source = chars.array();
+            sourceLength = chars.limit();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException("IO Exception on " + path, e);
         }
     }
 
@@ -51,95 +59,153 @@ public class LexicalAnalyzer {
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() {
-        //自动机实现的词法分析过程
-        String status;
-        int i = 0;
-        char ch;
-        char[] word = sourceString.toCharArray();
-        while(i < sourceString.length()) {
-            ch = word[i];
-
-            //为了结构更清晰，我们将读入的字符进行分类
-            if (ch == ' ' || ch == '\r' || ch == '\n' || ch == '\t') {
-                //特殊字符
-                status = "SKIP";
-            } else if (ch == ',' || ch == ';' || ch == '=' || ch == '+' || ch == '-' || ch == '*' || ch == '/' || ch == '(' || ch == ')') {
-                //仅判断一个字符便可以得出结果的情况
-                status = "SINGLE-PUNCTUATION";
-            } else if (Character.isLetter(ch)) {
-                //关键字和标识符
-                status = "LETTER";
-            } else if (Character.isDigit(ch)) {
-                //数字
-                status = "DIGIT";
-            } else {
-                status = "ERROR";
-            }
+        // 由码点文件构造的表驱动自动机完成实际的词法分析过程
+        // 平均每个词法单元不少于数个字符, 以此预估缓冲区容量
+        tokens = new TokenBuffer(source, sourceLength / 4);
+        getLexer().lex(source, 0, sourceLength, tokens, symbolTable);
 
+        //插入结束符
+        tokens.add(TokenKind.eof(), sourceLength, 0);
+    }
 
-            //对于每一种状态单独分析，其实也就是自动机的工作过程
-            switch (status) {
-                case "SKIP" -> ++i;
-                case "SINGLE-PUNCTUATION" -> {
-                    switch (ch) {
-                        case ',' -> tokens.add(Token.simple(","));
-                        case ';' -> tokens.add(Token.simple("Semicolon"));
-                        case '=' -> tokens.add(Token.simple("="));
-                        case '+' -> tokens.add(Token.simple("+"));
-                        case '-' -> tokens.add(Token.simple("-"));
-                        case '*' -> tokens.add(Token.simple("*"));
-                        case '/' -> tokens.add(Token.simple("/"));
-                        case '(' -> tokens.add(Token.simple("("));
-                        case ')' -> tokens.add(Token.simple(")"));
-                        default -> {
-                        }
-                    }
-                    i++;
-                }
-
-                case "DIGIT" -> {
-                    int index = i;
-                    while (Character.isDigit(ch) && (i+1 < sourceString.length())) {
-                        ch = word[++i];
-                    }
-                    String digit = sourceString.substring(index, i);
-                    tokens.add(Token.normal("IntConst", digit));
-                }
-
-                case "LETTER" -> {
-                    int index = i;
-                    while (Character.isLetter(ch) && (i+1 < sourceString.length())) {
-                        ch = word[++i];
-                    }
-                    String key = sourceString.substring(index, i);
-
-                    //当前读入字符串为标识符
-                    if (TokenKind.isAllowed(key)) {
-                        tokens.add(Token.simple(key));
-                    } else {
-                        //当前读入字符串为关键字
-                        tokens.add(Token.normal("id",key));
-                        if (!symbolTable.has(key)) {
-                            symbolTable.add(key);
-                        }
-                    }
-                }
-
-                default -> System.out.println("errorInput");
-            }
+    /**
+     * 并行地执行词法分析, 结果 (词法单元序列与符号表) 与 {@link #run()} 完全相同
+     * <br>
+     * 源语言中没有跨行的词法单元和注释, 每条语句都以分号结尾, 所以分号之后总是一个词法单元的边界.
+     * 据此在分号处将源程序切分为若干块, 在 {@code pool} 中分别对各块执行词法分析, 每块使用独立的词法单元缓冲区与符号表,
+     * 最后按块的顺序拼接词法单元并将各块的符号表依次并入共享的符号表.
+     *
+     * @param pool 执行各块词法分析的线程池
+     */
+    public void runParallel(ForkJoinPool pool) {
+        final var chunkSize = Math.max(MIN_CHUNK_SIZE, sourceLength / (pool.getParallelism() * CHUNKS_PER_WORKER));
+        if (sourceLength <= chunkSize) {
+            run();
+            return;
+        }
+
+        final var lexer = getLexer();
+        final var chunks = new ArrayList<ForkJoinTask<LexedChunk>>();
+        int from = 0;
+        while (from < sourceLength) {
+            final var begin = from;
+            final var end = nextChunkEnd(from + chunkSize);
+            chunks.add(pool.submit(() -> {
+                final var chunkTokens = new TokenBuffer(source, (end - begin) / 4);
+                final var chunkSymbols = new SymbolTable();
+                lexer.lex(source, begin, end, chunkTokens, chunkSymbols);
+                return new LexedChunk(chunkTokens, chunkSymbols);
+            }));
+            from = end;
+        }
+
+        tokens = new TokenBuffer(source, sourceLength / 4);
+        for (final var chunk : chunks) {
+            final var result = chunk.join();
+            tokens.append(result.tokens());
+            symbolTable.merge(result.symbolTable());
         }
 
         //插入结束符
-        tokens.add(Token.eof());
+        tokens.add(TokenKind.eof(), sourceLength, 0);
     }
 
+    /**
+     * 在源程序被编辑后增量地重新执行词法分析, 结果与对编辑后的源程序调用 {@link #run()} 相同
+     * <br>
+     * 编辑之前最后一个分号之前的词法单元不受编辑影响, 从该分号之后开始重新分析, 直到越过编辑区域后遇到的第一个分号为止:
+     * 这个分号之后的源程序与编辑前相同, 词法单元也就与编辑前的相同 (只是起始位置平移了), 两者在此重新同步.
+     * 因此词法分析的开销只与编辑所在的语句的长度有关, 与整个文件的大小无关;
+     * 拼接源程序与词法单元缓冲区时只有成块的数组复制.
+     * <br>
+     * 新出现的标识符会加入符号表; 不再被引用的标识符仍然留在符号表中.
+     *
+     * @param offset        编辑在源程序中的起始位置
+     * @param removedLength 被删除的字符数
+     * @param insertedText  插入的文本
+     * @return 本次编辑引起的词法单元变化, 编辑后的词法单元序列可以从 {@link #getTokens()} 获得
+     */
+    public TokenEdit relex(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > sourceLength) {
+            throw new RuntimeException("Illegal edit [%d, %d) on source of length %d"
+                .formatted(offset, offset + removedLength, sourceLength));
+        }
+
+        // 拼接编辑后的源程序
+        final var shift = insertedText.length() - removedLength;
+        final var newLength = sourceLength + shift;
+        final var newSource = new char[newLength];
+        System.arraycopy(source, 0, newSource, 0, offset);
+        insertedText.getChars(0, insertedText.length(), newSource, offset);
+        System.arraycopy(source, offset + removedLength, newSource, offset + insertedText.length(), sourceLength - offset - removedLength);
+
+        // 从编辑之前的最后一个分号之后开始重新分析
+        int firstToken = tokens.firstIndexFrom(offset);
+        while (firstToken > 0 && source[tokens.getStart(firstToken - 1)] != ';') {
+            firstToken--;
+        }
+        final var restart = firstToken == 0 ? 0 : tokens.getStart(firstToken - 1) + 1;
+
+        // 一直分析到编辑区域之后的第一个分号为止
+        final var resync = nextStatementEnd(newSource, newLength, offset + insertedText.length());
+        final var relexed = new TokenBuffer(newSource);
+        final var relexedSymbols = new SymbolTable();
+        getLexer().lex(newSource, restart, resync, relexed, relexedSymbols);
+
+        // 重新同步之后的词法单元 (包括结束符) 沿用编辑前的结果
+        final var reused = tokens.firstIndexFrom(resync - shift);
+        final var patched = new TokenBuffer(newSource, tokens.size() + relexed.size() - (reused - firstToken));
+        patched.append(tokens, 0, firstToken, 0);
+        patched.append(relexed);
+        patched.append(tokens, reused, tokens.size(), shift);
+
+        source = newSource;
+        sourceLength = newLength;
+        tokens = patched;
+        return new TokenEdit(firstToken, reused - firstToken, relexed.size(), symbolTable.merge(relexedSymbols));
+    }
+
+    /**
+     * @param position 期望的块结尾
+     * @return 不早于 position 的第一个分号之后的位置, 若之后没有分号则为源程序末尾
+     */
+    private int nextChunkEnd(int position) {
+        return nextStatementEnd(source, sourceLength, Math.max(position - 1, 0));
+    }
+
+    /**
+     * @param position 起始位置
+     * @return 不早于 position 的第一个分号之后的位置, 若之后没有分号则为 length
+     */
+    private static int nextStatementEnd(char[] source, int length, int position) {
+        for (int i = position; i < length; i++) {
+            if (source[i] == ';') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private DFALexer getLexer() {
+        if (lexer == null) {
+            lexer = DFALexer.fromTokenKinds();
+        }
+        return lexer;
+    }
+
+    // 每块至少包含的字符数, 以及每个工作线程平均分到的块数
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private record LexedChunk(TokenBuffer tokens, SymbolTable symbolTable) {
+    }
 
     /**
      * 获得词法分析的结果, 保证在调用了 run 方法之后调用
      *
-     * @return Token 列表
+     * @return 词法单元缓冲区, 其同时也是 Token 的序列
      */
-    public Iterable<Token> getTokens() {
+    public TokenBuffer getTokens() {
         // 从词法分析过程中获取 Token 列表
         return tokens;
     }
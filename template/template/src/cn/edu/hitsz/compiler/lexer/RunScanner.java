@@ -0,0 +1,76 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 成段跳过同一类别的 ASCII 字符的扫描后端
+ * <br>
+ * 空白, 标识符与整数常量在自动机中都是只在同一类别上自转移的状态, 它们的最长匹配就是从起点开始的一段同类字符.
+ * {@link DFALexer} 先用该后端跳过这段字符中的 ASCII 部分, 再从返回的位置起按字符类别表逐字符扫描剩下的部分
+ * (非 ASCII 字符, 不足一个向量宽度的尾部等), 因此后端只需保证不越过类别边界, 少跳过多少字符都不影响结果.
+ * <br>
+ * 默认的 {@link #SCALAR} 什么也不跳过, 完全由字符类别表完成扫描. 若运行时解析了 {@code jdk.incubator.vector} 模块
+ * (即以 {@code --add-modules jdk.incubator.vector} 启动) 且 src-vector 中的 {@code VectorRunScanner} 在类路径上,
+ * {@link #best()} 返回一次比较一整个向量 (16 或 32 个字符) 的实现; 否则退回标量路径.
+ */
+interface RunScanner {
+    /**
+     * @param source 字符缓冲区
+     * @param from   起始位置
+     * @param to     终止位置 (不含)
+     * @return 不小于 from, 不大于 to, 且 [from, 返回值) 中全是 ASCII 空白 (空格, 制表符, 回车, 换行) 的位置
+     */
+    int skipBlanks(char[] source, int from, int to);
+
+    /**
+     * @param source 字符缓冲区
+     * @param from   起始位置
+     * @param to     终止位置 (不含)
+     * @return 不小于 from, 不大于 to, 且 [from, 返回值) 中全是 ASCII 字母的位置
+     */
+    int skipLetters(char[] source, int from, int to);
+
+    /**
+     * @param source 字符缓冲区
+     * @param from   起始位置
+     * @param to     终止位置 (不含)
+     * @return 不小于 from, 不大于 to, 且 [from, 返回值) 中全是 ASCII 数字的位置
+     */
+    int skipDigits(char[] source, int from, int to);
+
+    /**
+     * 标量后端: 不跳过任何字符, 全部交给字符类别表
+     */
+    RunScanner SCALAR = new RunScanner() {
+        @Override
+        public int skipBlanks(char[] source, int from, int to) {
+            return from;
+        }
+
+        @Override
+        public int skipLetters(char[] source, int from, int to) {
+            return from;
+        }
+
+        @Override
+        public int skipDigits(char[] source, int from, int to) {
+            return from;
+        }
+    };
+
+    /**
+     * @return 当前运行环境下可用的最快后端, 向量模块或向量后端不可用时为 {@link #SCALAR}
+     */
+    static RunScanner best() {
+        // 只有在模块已被解析时才加载向量后端, 否则加载它会因为链接不到 jdk.incubator.vector 而失败
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (RunScanner) Class.forName(VECTOR_SCANNER_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    String VECTOR_MODULE = "jdk.incubator.vector";
+    String VECTOR_SCANNER_CLASS = "cn.edu.hitsz.compiler.lexer.VectorRunScanner";
+}
@@ -0,0 +1,260 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 紧凑存储的词法单元序列
+ * <br>
+ * 与 {@code List<Token>} 为每个词法单元构造一个对象不同, 该类以结构数组 (struct of arrays) 的形式存放词法单元:
+ * 第 i 个词法单元的类型码点, 文本在源程序中的起始位置与长度分别位于 kinds, starts, lengths 三个数组的第 i 个槽位.
+ * 词法单元的文本直接引用源程序缓冲区, 不为每个词法单元截取字符串.
+ * <br>
+ * {@link Token} 对象只在需要时 (如输出词法单元, 通知观察者) 通过 {@link #get(int)} 按需构造.
+ */
+public class TokenBuffer implements Iterable<Token> {
+    /**
+     * @param source 词法单元的文本所引用的源程序缓冲区
+     */
+    public TokenBuffer(char[] source) {
+        this(source, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param source   词法单元的文本所引用的源程序缓冲区
+     * @param capacity 预估的词法单元数量
+     */
+    public TokenBuffer(char[] source, int capacity) {
+        this.source = source;
+        final var initCapacity = Math.max(capacity, DEFAULT_CAPACITY);
+        this.kinds = new int[initCapacity];
+        this.starts = new int[initCapacity];
+        this.lengths = new int[initCapacity];
+    }
+
+    /**
+     * 从已经构造好的 Token 序列中构造, 各 Token 的文本被依次拼接为该缓冲区的源程序
+     *
+     * @param tokens Token 序列
+     * @return 构造出的缓冲区
+     */
+    public static TokenBuffer of(Iterable<Token> tokens) {
+        if (tokens instanceof TokenBuffer buffer) {
+            return buffer;
+        }
+
+        final var text = new StringBuilder();
+        for (final var token : tokens) {
+            text.append(token.getText());
+        }
+
+        final var buffer = new TokenBuffer(text.toString().toCharArray());
+        int start = 0;
+        for (final var token : tokens) {
+            final var length = token.getText().length();
+            buffer.add(token.getKind(), start, length);
+            start += length;
+        }
+
+        return buffer;
+    }
+
+    /**
+     * 在末尾加入一个词法单元
+     *
+     * @param kind   类型
+     * @param start  文本在源程序中的起始位置
+     * @param length 文本长度, 不带文本的简单词法单元 (如标点/关键字) 为 0
+     */
+    public void add(TokenKind kind, int start, int length) {
+        if (size == kinds.length) {
+            grow();
+        }
+
+        kinds[size] = kind.getCode();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /**
+     * 在末尾依次加入另一个缓冲区中的所有词法单元, 两个缓冲区应引用同一个源程序
+     *
+     * @param other 另一个缓冲区
+     */
+    public void append(TokenBuffer other) {
+        if (other.source != source) {
+            throw new RuntimeException("Can not append tokens of another source");
+        }
+
+        append(other, 0, other.size, 0);
+    }
+
+    /**
+     * 在末尾依次加入另一个缓冲区中下标位于 [from, to) 的词法单元, 并将它们的起始位置平移 shift
+     * <br>
+     * 调用者需要保证这些词法单元的文本在平移之后与本缓冲区的源程序中对应位置的文本相同
+     *
+     * @param other 另一个缓冲区
+     * @param from  起始下标 (含)
+     * @param to    终止下标 (不含)
+     * @param shift 起始位置的平移量
+     */
+    public void append(TokenBuffer other, int from, int to, int shift) {
+        if (from < 0 || to > other.size || from > to) {
+            throw new IndexOutOfBoundsException("Token range [%d, %d) out of range %d".formatted(from, to, other.size));
+        }
+
+        final var count = to - from;
+        ensureCapacity(size + count);
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        if (shift != 0) {
+            for (int i = size; i < size + count; i++) {
+                starts[i] += shift;
+            }
+        }
+        size += count;
+    }
+
+    /**
+     * 词法单元的起始位置是严格递增的, 据此二分查找
+     *
+     * @param position 源程序中的位置
+     * @return 第一个起始位置不小于 position 的词法单元的下标, 若不存在则为 size()
+     */
+    public int firstIndexFrom(int position) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (starts[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 词法单元数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元类型的码点
+     */
+    public int getKindCode(int index) {
+        checkIndex(index);
+        return kinds[index];
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的类型
+     */
+    public TokenKind getKind(int index) {
+        return TokenKind.fromCode(getKindCode(index));
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的文本在源程序中的起始位置
+     */
+    public int getStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的文本长度
+     */
+    public int getLength(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的文本, 有可能为空字符串 (但恒不为 null)
+     */
+    public String getText(int index) {
+        checkIndex(index);
+        return lengths[index] == 0 ? "" : new String(source, starts[index], lengths[index]);
+    }
+
+    /**
+     * 按需构造第 index 个词法单元的 Token 视图
+     *
+     * @param index 词法单元的下标
+     * @return 对应的 Token
+     */
+    public Token get(int index) {
+        checkIndex(index);
+        final var kind = TokenKind.fromCode(kinds[index]);
+        return lengths[index] == 0 ? Token.simple(kind) : Token.normal(kind, getText(index));
+    }
+
+    /**
+     * @return 词法单元的文本所引用的源程序缓冲区
+     */
+    public char[] getSource() {
+        return source;
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    private void grow() {
+        ensureCapacity(kinds.length + (kinds.length >> 1));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= kinds.length) {
+            return;
+        }
+
+        final var newCapacity = Math.max(capacity, kinds.length + (kinds.length >> 1));
+        kinds = Arrays.copyOf(kinds, newCapacity);
+        starts = Arrays.copyOf(starts, newCapacity);
+        lengths = Arrays.copyOf(lengths, newCapacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token index %d out of range %d".formatted(index, size));
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final char[] source;
+    private int[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int size = 0;
+}
@@ -0,0 +1,19 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTableEntry;
+
+import java.util.List;
+
+/**
+ * 一次源程序编辑引起的词法单元序列的变化
+ * <br>
+ * 编辑后的词法单元序列中, 下标位于 [firstToken, firstToken + insertedTokens) 的词法单元是重新分析得到的,
+ * 它们替换了编辑前下标位于 [firstToken, firstToken + removedTokens) 的词法单元; 其余词法单元保持不变 (只平移了起始位置).
+ *
+ * @param firstToken     第一个被替换的词法单元的下标
+ * @param removedTokens  编辑前被替换的词法单元数量
+ * @param insertedTokens 编辑后重新分析得到的词法单元数量
+ * @param addedSymbols   因此次编辑而新加入符号表的条目
+ */
+public record TokenEdit(int firstToken, int removedTokens, int insertedTokens, List<SymbolTableEntry> addedSymbols) {
+}
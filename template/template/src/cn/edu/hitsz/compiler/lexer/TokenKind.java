@@ -29,6 +29,8 @@ public class TokenKind extends Term {
     // 允许用作 TokenKind 的 id 的字符串集合
     private static final Map<String, TokenKind> allowed = new HashMap<>();
     private static final TokenKind eof = new TokenKind("$", -1);
+    // 码点到 TokenKind 的映射, 下标为码点
+    private static TokenKind[] byCode = new TokenKind[0];
 
     /**
      * 从码点文件中读取允许的标识符集合
@@ -50,6 +52,12 @@ public class TokenKind extends Term {
             allowed.put(id, new TokenKind(id, code));
         }
 
+        final var maxCode = allowed.values().stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        byCode = new TokenKind[maxCode + 1];
+        for (final var kind : allowed.values()) {
+            byCode[kind.getCode()] = kind;
+        }
+
         // EOF
         allowed.put("$", eof);
     }
@@ -86,6 +94,23 @@ public class TokenKind extends Term {
         return allowed.get(id);
     }
 
+    /**
+     * @param code 码点
+     * @return 具有该码点的 TokenKind, 码点 -1 对应 EOF
+     * @throws RuntimeException 码点文件尚未被读取, 或不存在具有该码点的 TokenKind
+     */
+    public static TokenKind fromCode(int code) {
+        if (code == eof.code) {
+            return eof;
+        }
+
+        if (code < 0 || code >= byCode.length || byCode[code] == null) {
+            throw new RuntimeException("Illegal code: " + code);
+        }
+
+        return byCode[code];
+    }
+
     /**
      * @return 代表 EOF 的 TokenKind
      */
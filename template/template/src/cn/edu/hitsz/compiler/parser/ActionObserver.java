@@ -17,7 +17,7 @@ import cn.edu.hitsz.compiler.symtab.SymbolTable;
  * ProductionCollector 类
  * <br>
  * 注意观察者并不能访问到 LR 驱动程序维护着的状态栈, 观察者之间维护的栈信息也不应该互相访问. 每一个实现该接口的观察者需要自己定义自己需要的
- * 状态信息并维护自己的状态栈.
+ * 状态信息并维护自己的状态栈, 或者使用驱动程序维护的共享属性栈 {@link ValueStack} (见 {@link #usesValueStack()}).
  *
  * @see ProductionCollector
  * @see SyntaxAnalyzer
@@ -48,6 +48,62 @@ public interface ActionObserver {
      */
     void whenAccept(Status currentStatus);
 
+    /**
+     * 观察者是否需要得知移入动作
+     * <br>
+     * 驱动程序在开始分析时按各观察者声明的兴趣建立分派表, 只通知声明了兴趣的观察者 (见 {@link SyntaxAnalyzer#callWhenInShift}).
+     * 没有任何观察者关心移入时, 驱动程序也不会为移入构造 Status 与 Token 对象.
+     *
+     * @return 是否需要在移入时调用 whenShift
+     */
+    default boolean caresAboutShift() {
+        return true;
+    }
+
+    /**
+     * 观察者是否需要得知按该产生式进行的规约
+     * <br>
+     * 驱动程序只对返回 true 的产生式调用 whenReduce. 维护自己的符号栈的观察者通常需要全部的规约; 对于体长度为 1
+     * 的产生式 (单产生式, 如 {@code E -> A}), 如果规约只是把栈顶的值原样传递, 跳过它不会改变栈的形状, 也可以返回 false.
+     * 启用单产生式旁路时 (见 {@link SyntaxAnalyzer#setUnitReductionBypass(boolean)}) 被跳过的规约同样按此过滤.
+     *
+     * @param production 产生式
+     * @return 是否需要在规约时调用 whenReduce
+     */
+    default boolean caresAbout(Production production) {
+        return true;
+    }
+
+    /**
+     * 观察者是否需要得知接受动作
+     *
+     * @return 是否需要在接受时调用 whenAccept
+     */
+    default boolean caresAboutAccept() {
+        return true;
+    }
+
+    /**
+     * 观察者是否使用驱动程序维护的共享属性栈
+     * <br>
+     * 只要有一个观察者返回 true, 驱动程序就会在分析过程中维护一个 {@link ValueStack}, 并在注册时通过
+     * {@link #setValueStack(ValueStack)} 交给这些观察者. 这样的观察者不必再为每个符号维护自己的符号栈,
+     * 通常也不再需要关心移入.
+     *
+     * @return 是否使用共享属性栈
+     */
+    default boolean usesValueStack() {
+        return false;
+    }
+
+    /**
+     * 当驱动程序交给观察者共享属性栈时会调用此函数, 只对 {@link #usesValueStack()} 返回 true 的观察者调用
+     *
+     * @param stack 属性栈
+     */
+    default void setValueStack(ValueStack stack) {
+    }
+
     /**
      * 当驱动程序接受符号表时会调用此函数, 实现此接口的类可以自行决定是否存储这个符号表
      *
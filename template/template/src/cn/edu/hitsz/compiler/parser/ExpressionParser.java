@@ -0,0 +1,301 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRLookupTable;
+import cn.edu.hitsz.compiler.parser.table.NonTerminal;
+
+import java.util.Arrays;
+
+/**
+ * 表达式子文法的算符优先快速通道, 供 {@link SyntaxAnalyzer} 的混合模式使用
+ * <br>
+ * 表达式子文法
+ * <pre>
+ * E -> E + A | E - A | A
+ * A -> A * B | B
+ * B -> ( E ) | id | IntConst
+ * </pre>
+ * 只有两个优先级且都是左结合的. 该类直接在词法单元缓冲区上按优先级逐层归约: 拿到一个 B 之后, 依次看它能否在 A 层与左边挂起的 *
+ * 结合, 再看在 E 层能否与挂起的 + 或 - 结合, 下一个词法单元若是同层的运算符就移入并继续读下一个操作数, 否则继续向外层提升.
+ * 挂起的运算符与左括号放在一个 int 栈中, 没有递归, 任意深的括号嵌套也不会栈溢出.
+ * <br>
+ * 何时移入, 何时规约由优先级决定, 不查 ACTION 表; 但与此同时仍在另一个 int 栈上推进 LR 状态: 移入时取 ACTION 表中的目标状态,
+ * 规约时弹出产生式体长度个状态后压入 GOTO. 因此发出的移入与规约事件, 连同观察者收到的 Status, 都与 LR 驱动程序对合法表达式的
+ * 事件序列完全相同 (包括单产生式的规约). 每次规约之前都会像规范 LR(1) 表一样检查向前看符号,
+ * 因此对非法的输入, 报错前发出的事件也与查表驱动相同.
+ * <br>
+ * 若文法中缺少上面任何一条产生式, {@link #forTable(LRLookupTable)} 返回 null, 驱动程序照常查表.
+ */
+final class ExpressionParser {
+    /**
+     * @param table 分析表
+     * @return 该分析表对应的表达式快速通道, 文法不包含上述表达式子文法时为 null
+     */
+    static ExpressionParser forTable(LRLookupTable table) {
+        final var productions = GrammarInfo.getProductions();
+        final var texts = new String[]{"E -> E + A", "E -> E - A", "E -> A", "A -> A * B", "A -> B",
+            "B -> ( E )", "B -> id", "B -> IntConst"};
+        final var indexes = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            final var production = productions.get(texts[i]);
+            if (production == null) {
+                return null;
+            }
+            indexes[i] = production.index();
+        }
+        return new ExpressionParser(table, indexes);
+    }
+
+    /**
+     * 表达式起始状态: 在 E 上有 GOTO, 且所有非错误动作都是移入一个能开始表达式的词法单元.
+     * 这保证了从该状态开始只可能在分析一个 E, 快速通道不会抢走其它产生式的输入.
+     *
+     * @param state LR 状态
+     * @return 是否可以从该状态进入快速通道
+     */
+    boolean isExpressionStart(int state) {
+        if (expressionStart == null) {
+            expressionStart = new byte[table.getStatusCount()];
+        }
+        if (expressionStart[state] == UNKNOWN) {
+            expressionStart[state] = checkExpressionStart(state) ? YES : NO;
+        }
+        return expressionStart[state] == YES;
+    }
+
+    /**
+     * @param state 表达式起始状态
+     * @return 分析完 E 之后应压入的状态
+     */
+    int stateAfter(int state) {
+        return table.gotoState(state, expressionColumn);
+    }
+
+    /**
+     * 从下标 start 处的词法单元开始分析一个 E, 并通知 analyzer 各移入与规约事件
+     *
+     * @param analyzer 驱动程序
+     * @param tokens   词法单元缓冲区
+     * @param state    表达式起始状态
+     * @param start    表达式第一个词法单元的下标
+     * @return E 之后第一个词法单元的下标, 出错时为 -1
+     */
+    int parse(SyntaxAnalyzer analyzer, TokenBuffer tokens, int state, int start) {
+        int i = start;
+        int depth = 0;
+        // LR 状态栈, states[0] 为表达式起始状态, states[top] 为当前状态
+        int top = 0;
+        states[0] = state;
+        // 挂起的左括号个数
+        int parens = 0;
+        // 整个表达式之后的状态, 用于判断表达式之后的词法单元是否合法
+        final int after = stateAfter(state);
+
+        operand:
+        while (true) {
+            // 读一个 B 的开头: 左括号挂起后继续读, 直到遇到 id 或 IntConst
+            final int first = tokens.getKindCode(i);
+            if (first == leftParen) {
+                if ((top = shift(analyzer, top, i++, first)) < 0) {
+                    return -1;
+                }
+                depth = push(depth, LEFT_PAREN);
+                parens++;
+                continue;
+            }
+
+            // 得到 B 所用的产生式
+            int operand;
+            if (first == id) {
+                operand = bId;
+            } else if (first == intConst) {
+                operand = bIntConst;
+            } else {
+                return -1;
+            }
+            if ((top = shift(analyzer, top, i++, first)) < 0) {
+                return -1;
+            }
+
+            // 将得到的 B 逐层向外提升
+            while (true) {
+                // 与规范 LR(1) 表一样, 只在向前看符号合法时才规约 B 及其外层, 出错时不多发出任何事件
+                final int next = tokens.getKindCode(i);
+                if (next != times && next != plus && next != minus
+                    && (parens > 0 ? next != rightParen : CompiledLRTable.kindOf(table.action(after, next)) == CompiledLRTable.ERROR)) {
+                    return -1;
+                }
+
+                top = reduce(analyzer, top, operand);
+                if (depth > 0 && pending[depth - 1] == aTimes) {
+                    depth--;
+                    top = reduce(analyzer, top, aTimes);
+                } else {
+                    top = reduce(analyzer, top, aUnit);
+                }
+
+                if (next == times) {
+                    if ((top = shift(analyzer, top, i++, next)) < 0) {
+                        return -1;
+                    }
+                    depth = push(depth, aTimes);
+                    continue operand;
+                }
+
+                if (depth > 0 && (pending[depth - 1] == ePlus || pending[depth - 1] == eMinus)) {
+                    top = reduce(analyzer, top, pending[--depth]);
+                } else {
+                    top = reduce(analyzer, top, eUnit);
+                }
+
+                if (next == plus || next == minus) {
+                    if ((top = shift(analyzer, top, i++, next)) < 0) {
+                        return -1;
+                    }
+                    depth = push(depth, next == plus ? ePlus : eMinus);
+                    continue operand;
+                }
+
+                if (depth == 0) {
+                    return i;
+                }
+
+                // 栈顶只可能是左括号, 且 next 已检查过是右括号: 得到 ( E ), 作为一个新的 B 继续提升
+                if ((top = shift(analyzer, top, i++, next)) < 0) {
+                    return -1;
+                }
+                depth--;
+                parens--;
+                operand = bParen;
+            }
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private ExpressionParser(LRLookupTable table, int[] productions) {
+        this.table = table;
+        this.ePlus = productions[0];
+        this.eMinus = productions[1];
+        this.eUnit = productions[2];
+        this.aTimes = productions[3];
+        this.aUnit = productions[4];
+        this.bParen = productions[5];
+        this.bId = productions[6];
+        this.bIntConst = productions[7];
+        this.expressionColumn = table.headOf(eUnit);
+        this.expression = table.getProduction(eUnit).head();
+
+        this.plus = TokenKind.fromString("+").getCode();
+        this.minus = TokenKind.fromString("-").getCode();
+        this.times = TokenKind.fromString("*").getCode();
+        this.leftParen = TokenKind.fromString("(").getCode();
+        this.rightParen = TokenKind.fromString(")").getCode();
+        this.id = TokenKind.fromString("id").getCode();
+        this.intConst = TokenKind.fromString("IntConst").getCode();
+    }
+
+    private boolean checkExpressionStart(int state) {
+        // 压缩的分析表用默认目标覆盖了 GOTO 表的错误格子, 因此从 Status 判断该状态在 E 上是否真的有 GOTO
+        if (table.getStatus(state).getGoto(expression).isError()) {
+            return false;
+        }
+
+        boolean canStart = false;
+        for (final var kind : TokenKind.allAllowedTokenKinds().values()) {
+            final var code = kind.getCode();
+            final var action = table.action(state, code);
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.ERROR -> {
+                }
+                case CompiledLRTable.SHIFT -> {
+                    if (code != leftParen && code != id && code != intConst) {
+                        return false;
+                    }
+                    canStart = true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return canStart;
+    }
+
+    /**
+     * 在当前状态下移入一个词法单元, 压入 ACTION 表给出的目标状态
+     *
+     * @return 新的状态栈顶, 该词法单元在当前状态下不能移入时为 -1
+     */
+    private int shift(SyntaxAnalyzer analyzer, int top, int tokenIndex, int code) {
+        final int action = table.action(states[top], code);
+        if (CompiledLRTable.kindOf(action) != CompiledLRTable.SHIFT) {
+            return -1;
+        }
+        analyzer.notifyShift(states[top], tokenIndex);
+        return pushState(top, CompiledLRTable.operandOf(action));
+    }
+
+    /**
+     * 在当前状态下规约一条产生式: 弹出产生式体长度个状态, 压入 GOTO
+     *
+     * @return 新的状态栈顶
+     */
+    private int reduce(SyntaxAnalyzer analyzer, int top, int production) {
+        analyzer.notifyReduce(states[top], production);
+        top -= table.lengthOf(production);
+        return pushState(top, table.gotoState(states[top], table.headOf(production)));
+    }
+
+    private int pushState(int top, int state) {
+        if (top + 1 == states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[top + 1] = state;
+        return top + 1;
+    }
+
+    private int push(int depth, int operator) {
+        if (depth == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[depth] = operator;
+        return depth + 1;
+    }
+
+    private static final byte UNKNOWN = 0;
+    private static final byte YES = 1;
+    private static final byte NO = 2;
+    // 挂起的左括号, 与产生式编号 (均非负) 区分
+    private static final int LEFT_PAREN = -1;
+
+    private final LRLookupTable table;
+    private final int expressionColumn;
+    private final NonTerminal expression;
+    // 每个状态是否为表达式起始状态, 按需计算
+    private byte[] expressionStart = null;
+    // 挂起的运算符 (以对应的产生式编号表示) 与左括号
+    private int[] pending = new int[16];
+    // 表达式内部的 LR 状态栈
+    private int[] states = new int[16];
+
+    private final int ePlus;
+    private final int eMinus;
+    private final int eUnit;
+    private final int aTimes;
+    private final int aUnit;
+    private final int bParen;
+    private final int bId;
+    private final int bIntConst;
+
+    private final int plus;
+    private final int minus;
+    private final int times;
+    private final int leftParen;
+    private final int rightParen;
+    private final int id;
+    private final int intConst;
+}
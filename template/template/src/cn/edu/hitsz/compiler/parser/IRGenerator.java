@@ -13,104 +13,68 @@ import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 // TODO: 实验三: 实现 IR 生成
 public class IRGenerator implements ActionObserver {
 
     public SymbolTable table;
-    private final Stack<Symbol> tokenStack = new Stack<>();
+    // 驱动程序维护的共享属性栈, 各符号的 IR 值存放在其中
+    private ValueStack values;
     private List<Instruction> IRList = new ArrayList<>();
+    // 各产生式的语义动作, 以产生式文本绑定; E -> A, A -> B 的头默认就是体的副本, 值原样向上传递, 不需要动作
+    private final SemanticActions actions = new SemanticActions()
+        .on("S -> id = E", p -> IRList.add(Instruction.createMov(IRVariable.named(values.text(0)), values.value(2))))
+        .on("S -> return E", p -> IRList.add(Instruction.createRet(values.value(1))))
+        .on("E -> E + A", p -> {
+            final var valueTemp = IRVariable.temp();  //生成临时变量
+            IRList.add(Instruction.createAdd(valueTemp, values.value(0), values.value(2)));
+            values.setValue(valueTemp);
+        })
+        .on("E -> E - A", p -> {
+            final var valueTemp = IRVariable.temp();  //生成临时变量
+            IRList.add(Instruction.createSub(valueTemp, values.value(0), values.value(2)));
+            values.setValue(valueTemp);
+        })
+        .on("A -> A * B", p -> {
+            final var valueTemp = IRVariable.temp();  //生成临时变量
+            IRList.add(Instruction.createMul(valueTemp, values.value(0), values.value(2)));
+            values.setValue(valueTemp);
+        })
+        .on("B -> ( E )", p -> values.setValue(values.value(1)))
+        .on("B -> id", p -> values.setValue(IRVariable.named(values.text(0))))
+        .on("B -> IntConst", p -> values.setValue(IRImmediate.of(Integer.parseInt(values.text(0)))));
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
         // TODO
-        String number = "^[0-9]+$";
-        Symbol curSymbol = new Symbol(currentToken);
-        if(currentToken.getText().matches(number)){
-            curSymbol.value = IRImmediate.of(Integer.parseInt(currentToken.getText()));
-        }else{
-            curSymbol.value = IRVariable.named(currentToken.getText());
-        }
-        tokenStack.push(curSymbol);
+        // 词法单元的值在规约 B -> id 与 B -> IntConst 时才从属性栈中的词法单元得到
+    }
+
+    @Override
+    public boolean caresAboutShift() {
+        return false;
     }
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
         // TODO
-        Symbol lhs, rhs;
-        Symbol curNonTerminal = new Symbol(production.head());
-        IRVariable valueTemp;
-        switch(production.index()){
-            case 6:     //S -> id = E;
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-                valueTemp = (IRVariable) lhs.value;
-                curNonTerminal.value = null;
-                IRList.add(Instruction.createMov(valueTemp, rhs.value));
-                tokenStack.push(curNonTerminal);
-                break;
-            case 7:     //S -> return E;
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                curNonTerminal.value = null;
-                IRList.add(Instruction.createRet(rhs.value));
-                tokenStack.push(curNonTerminal);
-                break;
-            case 8:     //E -> E + A;
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-                valueTemp = IRVariable.temp();  //生成临时变量
-                IRList.add(Instruction.createAdd(valueTemp, lhs.value, rhs.value));
-                curNonTerminal.value = valueTemp;
-                tokenStack.push(curNonTerminal);
-                break;
-            case 9:     //E -> E - A;
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-                valueTemp = IRVariable.temp();  //生成临时变量
-                IRList.add(Instruction.createSub(valueTemp, lhs.value, rhs.value));
-                curNonTerminal.value = valueTemp;
-                tokenStack.push(curNonTerminal);
-                break;
-            case 10:    //E -> A;
-            case 12:    //A -> B;
-            case 14:    //B -> id;
-                curNonTerminal.value = tokenStack.pop().value;
-                tokenStack.push(curNonTerminal);
-                break;
-            case 11:    //A -> A * B;
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-                valueTemp = IRVariable.temp();  //生成临时变量
-                IRList.add(Instruction.createMul(valueTemp, lhs.value, rhs.value));
-                curNonTerminal.value = valueTemp;
-                tokenStack.push(curNonTerminal);
-                break;
-            case 13:    //B -> ( E );
-                tokenStack.pop();
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                curNonTerminal.value = rhs.value;
-                tokenStack.push(curNonTerminal);
-                break;
-            case 15:    //B -> IntConst;
-                rhs = tokenStack.pop();
-                curNonTerminal.value = rhs.value;
-                tokenStack.push(curNonTerminal);
-                break;
-            default:
-                for(int i=0; i<production.body().size(); i++){
-                    tokenStack.pop();
-                }
-                tokenStack.push(new Symbol(production.head()));
-        }
+        actions.run(production);
+    }
+
+    @Override
+    public boolean caresAbout(Production production) {
+        return actions.handles(production);
+    }
+
+    @Override
+    public boolean usesValueStack() {
+        return true;
     }
 
+    @Override
+    public void setValueStack(ValueStack stack) {
+        this.values = stack;
+    }
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -118,6 +82,11 @@ public class IRGenerator implements ActionObserver {
         // throw new NotImplementedException();
     }
 
+    @Override
+    public boolean caresAboutAccept() {
+        return false;
+    }
+
     @Override
     public void setSymbolTable(SymbolTable table) {
         // TODO
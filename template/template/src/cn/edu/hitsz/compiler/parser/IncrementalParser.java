@@ -0,0 +1,350 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenEdit;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRLookupTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 增量的 LR 语法分析器
+ * <br>
+ * 分析过程在每移入一个 Semicolon 之后切分为一段, 每段记录它的起始词法单元, 段开始时的状态栈以及段内的移入/规约事件.
+ * 源程序被编辑后 (见 {@link cn.edu.hitsz.compiler.lexer.LexicalAnalyzer#relex}), 只需从编辑所在的段开始,
+ * 以该段开始时的状态栈重新分析, 直到越过编辑区域后到达某个旧的段边界, 且此时的状态栈与旧的分析在该处的状态栈相同为止:
+ * 之后的分析过程必然与编辑前一致, 旧的段可以原样沿用.
+ * <br>
+ * 状态栈是一个持久化的链表: 每次压栈都新建一个指向下层的结点, 弹栈只是回到下层结点, 因此各段边界处的状态栈可以共享下层,
+ * 每个边界只需保存一个结点引用. 比较两个状态栈时从栈顶向下逐个比较, 遇到同一个结点即可停止, 开销只与重新分析的部分有关.
+ * <br>
+ * 对于 {@code S_list -> S Semicolon S_list} 这样的右递归文法, 所有 S_list 的规约都发生在最后一段中,
+ * 因此编辑最后一条语句时需要重做这些规约; 编辑其它语句时重新分析的工作量只与被编辑的语句有关, 与文件大小无关.
+ * <br>
+ * 观察者可以通过 {@link #replay(ActionObserver)} 得到完整的事件序列, 也可以根据 {@link ParseEdit} 只重放被替换的段.
+ */
+public class IncrementalParser {
+    /**
+     * @param table LR 分析表
+     */
+    public IncrementalParser(LRLookupTable table) {
+        this.table = table;
+        this.semicolon = TokenKind.fromString("Semicolon").getCode();
+    }
+
+    /**
+     * 从头分析整个词法单元序列
+     *
+     * @param tokens 词法单元缓冲区
+     * @return 能否被接受
+     */
+    public boolean parse(TokenBuffer tokens) {
+        this.tokens = tokens;
+        final var parsed = parseFrom(new Frame(table.getInitState(), 0, null), 0, -1, -1);
+        segments.clear();
+        segments.addAll(parsed);
+        starts = Arrays.copyOf(parsedStarts, parsed.size());
+        return accepted;
+    }
+
+    /**
+     * 在词法单元序列被编辑后增量地重新分析, 事件序列与对编辑后的词法单元序列调用 {@link #parse(TokenBuffer)} 相同
+     *
+     * @param tokens 编辑后的词法单元缓冲区
+     * @param edit   编辑引起的词法单元变化
+     * @return 事件序列的变化
+     */
+    public ParseEdit reparse(TokenBuffer tokens, TokenEdit edit) {
+        if (!accepted || segments.isEmpty()) {
+            // 上一次分析出错时之后的段并不完整, 直接整个重新分析
+            final var removed = segments.size();
+            parse(tokens);
+            return new ParseEdit(0, removed, segments.size(), accepted);
+        }
+
+        this.tokens = tokens;
+        final var delta = edit.insertedTokens() - edit.removedTokens();
+        final var oldEditEnd = edit.firstToken() + edit.removedTokens();
+
+        // 从包含编辑起点的段开始重新分析; 编辑起点恰好是段的开头时, 前一段的事件不依赖之后的词法单元
+        final var first = Math.max(segmentAt(edit.firstToken()), 0);
+        // 第一个完全位于编辑区域之后的旧段, 只有在它及之后的旧段边界处才可能重新同步
+        int candidate = segmentAt(oldEditEnd);
+        if (candidate < 0 || starts[candidate] < oldEditEnd) {
+            candidate++;
+        }
+
+        final var parsed = parseFrom(segments.get(first).stack(), starts[first], candidate, delta);
+        final var resync = resyncSegment;
+        final var removed = (resync < 0 ? segments.size() : resync) - first;
+
+        // 拼接段列表, 之后的段的起始位置整体平移
+        final var newStarts = new int[starts.length - removed + parsed.size()];
+        System.arraycopy(starts, 0, newStarts, 0, first);
+        System.arraycopy(parsedStarts, 0, newStarts, first, parsed.size());
+        if (resync >= 0) {
+            final var tail = starts.length - resync;
+            System.arraycopy(starts, resync, newStarts, first + parsed.size(), tail);
+            for (int i = first + parsed.size(); i < newStarts.length; i++) {
+                newStarts[i] += delta;
+            }
+        }
+        final var replaced = segments.subList(first, first + removed);
+        replaced.clear();
+        replaced.addAll(parsed);
+        starts = newStarts;
+
+        return new ParseEdit(first, removed, parsed.size(), accepted);
+    }
+
+    /**
+     * 将完整的事件序列依次通知给观察者, 相当于对当前的词法单元序列运行一次 {@link SyntaxAnalyzer}
+     *
+     * @param observer 观察者
+     */
+    public void replay(ActionObserver observer) {
+        replay(0, segments.size(), observer);
+    }
+
+    /**
+     * 将下标位于 [from, to) 的段的事件依次通知给观察者
+     * <br>
+     * 使用共享属性栈的观察者 (见 {@link ActionObserver#usesValueStack()}) 会得到一个新的属性栈, 它只在从第 0 段开始重放时才完整.
+     *
+     * @param from     起始段 (含)
+     * @param to       终止段 (不含)
+     * @param observer 观察者
+     */
+    public void replay(int from, int to, ActionObserver observer) {
+        // 与 SyntaxAnalyzer 一样只通知观察者声明关心的动作
+        final var shifts = observer.caresAboutShift();
+        final var accepts = observer.caresAboutAccept();
+        final var productions = GrammarInfo.getProductionsInOrder();
+        final var reduces = new boolean[productions.stream().mapToInt(Production::index).max().orElse(-1) + 1];
+        for (final var production : productions) {
+            reduces[production.index()] = observer.caresAbout(production);
+        }
+        final var values = observer.usesValueStack() ? new ValueStack() : null;
+        if (values != null) {
+            values.reset(tokens);
+            observer.setValueStack(values);
+        }
+
+        for (int s = from; s < to; s++) {
+            final var events = segments.get(s).events();
+            int token = starts[s];
+            for (int e = 0; e < events.length; e += 2) {
+                final var action = events[e];
+                switch (CompiledLRTable.kindOf(action)) {
+                    case CompiledLRTable.SHIFT -> {
+                        if (values != null) {
+                            values.shift(token);
+                        }
+                        if (shifts) {
+                            observer.whenShift(table.getStatus(events[e + 1]), tokens.get(token));
+                        }
+                        token++;
+                    }
+                    case CompiledLRTable.REDUCE -> {
+                        final var production = CompiledLRTable.operandOf(action);
+                        if (values != null) {
+                            values.beginReduce(table.lengthOf(production));
+                        }
+                        if (production >= reduces.length || reduces[production]) {
+                            observer.whenReduce(table.getStatus(events[e + 1]), table.getProduction(production));
+                        }
+                        if (values != null) {
+                            values.endReduce();
+                        }
+                    }
+                    case CompiledLRTable.ACCEPT -> {
+                        if (accepts) {
+                            observer.whenAccept(table.getStatus(events[e + 1]));
+                        }
+                    }
+                    default -> throw new RuntimeException("Unknown event: " + action);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 当前的段数
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return 当前的词法单元序列能否被接受
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 持久化状态栈的结点
+     *
+     * @param state  栈顶状态
+     * @param depth  栈顶的下标
+     * @param parent 下层结点, 栈底为 null
+     */
+    private record Frame(int state, int depth, Frame parent) {
+    }
+
+    /**
+     * 一个分析段, 段的起始词法单元下标单独存放在 starts 中, 以便编辑后整体平移
+     *
+     * @param stack  段开始时的状态栈
+     * @param events 段内的事件, 每个事件占两个 int: 编码后的动作 (见 {@link CompiledLRTable}) 与执行该动作时的状态
+     */
+    private record Segment(Frame stack, int[] events) {
+    }
+
+    /**
+     * 从给定的状态栈与词法单元开始分析, 直到接受, 出错, 或在某个旧的段边界处重新同步
+     *
+     * @param stack     起始状态栈
+     * @param start     起始词法单元的下标
+     * @param candidate 可以重新同步的第一个旧段, 为 -1 时不尝试重新同步
+     * @param delta     旧段的起始位置在新的词法单元序列中的平移量
+     * @return 新分析出的段, 它们的起始位置记录在 parsedStarts 中, 重新同步到的旧段下标记录在 resyncSegment 中 (未同步时为 -1)
+     */
+    private List<Segment> parseFrom(Frame stack, int start, int candidate, int delta) {
+        final var result = new ArrayList<Segment>();
+        resyncSegment = -1;
+
+        var top = stack;
+        int i = start;
+        int segmentStart = start;
+        var segmentStack = stack;
+        var events = new int[16];
+        int size = 0;
+
+        while (true) {
+            final var code = tokens.getKindCode(i);
+            final var action = table.action(top.state(), code);
+            if (size + 2 > events.length) {
+                events = Arrays.copyOf(events, events.length * 2);
+            }
+
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    events[size++] = action;
+                    events[size++] = top.state();
+                    top = new Frame(CompiledLRTable.operandOf(action), top.depth() + 1, top);
+                    i++;
+
+                    if (code == semicolon) {
+                        // 段边界: 结束当前段, 再看能否与旧的分析重新同步
+                        addSegment(result, segmentStart, segmentStack, events, size);
+                        segmentStart = i;
+                        segmentStack = top;
+                        size = 0;
+
+                        if (candidate >= 0) {
+                            while (candidate < starts.length && starts[candidate] + delta < i) {
+                                candidate++;
+                            }
+                            if (candidate < starts.length && starts[candidate] + delta == i
+                                && sameStack(top, segments.get(candidate).stack())) {
+                                resyncSegment = candidate;
+                                accepted = true;
+                                return result;
+                            }
+                        }
+                    }
+                }
+                case CompiledLRTable.REDUCE -> {
+                    final var production = CompiledLRTable.operandOf(action);
+                    events[size++] = action;
+                    events[size++] = top.state();
+                    for (int n = table.lengthOf(production); n > 0; n--) {
+                        top = top.parent();
+                    }
+                    final var next = table.gotoState(top.state(), table.headOf(production));
+                    if (next < 0) {
+                        return finish(result, segmentStart, segmentStack, events, size, false);
+                    }
+                    top = new Frame(next, top.depth() + 1, top);
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    events[size++] = action;
+                    events[size++] = top.state();
+                    return finish(result, segmentStart, segmentStack, events, size, true);
+                }
+                default -> {
+                    return finish(result, segmentStart, segmentStack, events, size, false);
+                }
+            }
+        }
+    }
+
+    private List<Segment> finish(List<Segment> result, int segmentStart, Frame segmentStack,
+                                 int[] events, int size, boolean accept) {
+        addSegment(result, segmentStart, segmentStack, events, size);
+        accepted = accept;
+        return result;
+    }
+
+    private void addSegment(List<Segment> result, int segmentStart, Frame segmentStack, int[] events, int size) {
+        if (result.size() == parsedStarts.length) {
+            parsedStarts = Arrays.copyOf(parsedStarts, parsedStarts.length * 2);
+        }
+        parsedStarts[result.size()] = segmentStart;
+        result.add(new Segment(segmentStack, Arrays.copyOf(events, size)));
+    }
+
+    /**
+     * @param a 状态栈之一
+     * @param b 状态栈之二
+     * @return 两个状态栈的内容是否相同
+     */
+    private static boolean sameStack(Frame a, Frame b) {
+        while (a != b) {
+            if (a == null || b == null || a.state() != b.state() || a.depth() != b.depth()) {
+                return false;
+            }
+            a = a.parent();
+            b = b.parent();
+        }
+        return true;
+    }
+
+    /**
+     * @param token 词法单元的下标 (编辑前)
+     * @return 起始位置不大于 token 的最后一个段, 不存在时为 -1
+     */
+    private int segmentAt(int token) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (starts[mid] <= token) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    private final LRLookupTable table;
+    private final int semicolon;
+
+    private TokenBuffer tokens;
+    private final List<Segment> segments = new ArrayList<>();
+    // 各段的起始词法单元下标, 与 segments 一一对应
+    private int[] starts = new int[0];
+    private boolean accepted = false;
+    // 最近一次 parseFrom 分析出的各段的起始位置, 以及重新同步到的旧段 (-1 表示未同步)
+    private int[] parsedStarts = new int[16];
+    private int resyncSegment = -1;
+}
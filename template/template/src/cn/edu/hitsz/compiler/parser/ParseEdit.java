@@ -0,0 +1,15 @@
+package cn.edu.hitsz.compiler.parser;
+
+/**
+ * 一次词法单元编辑引起的分析事件序列的变化, 以语句 (分析段) 为单位
+ * <br>
+ * 重新分析后, 下标位于 [firstSegment, firstSegment + insertedSegments) 的段是重新分析得到的,
+ * 它们替换了编辑前下标位于 [firstSegment, firstSegment + removedSegments) 的段; 其余段的事件保持不变.
+ *
+ * @param firstSegment     第一个被替换的段的下标
+ * @param removedSegments  编辑前被替换的段数量
+ * @param insertedSegments 重新分析得到的段数量
+ * @param accepted         编辑后的词法单元序列能否被接受
+ */
+public record ParseEdit(int firstSegment, int removedSegments, int insertedSegments, boolean accepted) {
+}
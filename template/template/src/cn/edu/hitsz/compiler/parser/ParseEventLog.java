@@ -0,0 +1,151 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 从 {@link ParseEventRecorder} 写出的文件中读出的分析事件日志
+ * <br>
+ * 读取时恢复源程序与被移入的词法单元, 并像词法分析器一样按出现顺序收集其中的标识符; 事件只展开变长编码, 不做其它处理.
+ * 读出的日志不再改变, 可以交给多个 {@link ParseEventReplayer} 反复重放, 每次重放都不必重新读取与解码.
+ */
+public final class ParseEventLog {
+    /**
+     * 读取日志文件
+     *
+     * @param path 日志文件路径
+     * @return 读出的日志
+     */
+    public static ParseEventLog load(String path) {
+        try (final var channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != ParseEventRecorder.MAGIC || buffer.getInt() != ParseEventRecorder.VERSION) {
+                throw new RuntimeException("Not a parse event log: " + path);
+            }
+
+            final var sourceLength = buffer.getInt();
+            final var tokenCount = buffer.getInt();
+            final var eventCount = buffer.getInt();
+            final var tokenBytes = buffer.getInt();
+            final var eventBytes = buffer.getInt();
+            if (Math.min(Math.min(sourceLength, tokenCount), Math.min(eventCount, Math.min(tokenBytes, eventBytes))) < 0) {
+                throw new RuntimeException("Corrupted parse event log: " + path);
+            }
+
+            final var source = new char[sourceLength];
+            buffer.asCharBuffer().get(source);
+            buffer.position(buffer.position() + sourceLength * Character.BYTES);
+            // 两段字节整块读入数组后再解码, 避免逐字节访问映射缓冲区
+            final var tokenLog = new byte[tokenBytes];
+            buffer.get(tokenLog);
+            final var eventLog = new byte[eventBytes];
+            buffer.get(eventLog);
+
+            final var symbols = new SymbolTable();
+            final var tokens = decodeTokens(tokenLog, source, tokenCount, symbols);
+            return new ParseEventLog(tokens, symbols, decodeVarints(eventLog), eventCount);
+        } catch (BufferUnderflowException e) {
+            throw new RuntimeException("Corrupted parse event log: " + path, e);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * @return 被移入的词法单元, 第 k 个词法单元即第 k 次移入的词法单元, 末尾补有 EOF
+     */
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return 事件数
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * @return 按首次出现的顺序登记了源程序中全部标识符的符号表, 不应被修改
+     */
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return 展开了变长编码的事件, 格式见 {@link ParseEventRecorder}; 末尾至少有一个 -1
+     */
+    int[] getEvents() {
+        return events;
+    }
+
+    private static TokenBuffer decodeTokens(byte[] tokenLog, char[] source, int tokenCount, SymbolTable symbols) {
+        final var identifierCode = TokenKind.fromString("id").getCode();
+        final var values = decodeVarints(tokenLog);
+        final var result = new TokenBuffer(source, tokenCount + 1);
+        int previousEnd = 0;
+        for (int i = 0, position = 0; i < tokenCount; i++) {
+            final var code = values[position++] - 1;
+            final var start = previousEnd + values[position++];
+            final var length = values[position++];
+            if (start < previousEnd || length < 0 || start + length > source.length) {
+                throw new RuntimeException("Token at offset %d in parse event log is out of source".formatted(start));
+            }
+            result.add(TokenKind.fromCode(code), start, length);
+            if (code == identifierCode) {
+                symbols.intern(source, start, length);
+            }
+            previousEnd = start + length;
+        }
+        result.add(TokenKind.eof(), source.length, 0);
+        return result;
+    }
+
+    /**
+     * 在一个紧凑的循环中把变长编码的整数全部展开, 之后只需顺序读取数组; 未用到的槽位 (至少一个) 填为 -1,
+     * 截断的日志在解释时读到 -1 而不会越界
+     *
+     * @param bytes 变长编码的字节
+     * @return 展开后的整数序列
+     */
+    private static int[] decodeVarints(byte[] bytes) {
+        final var values = new int[bytes.length + 1];
+        int count = 0;
+        int value = 0;
+        int shift = 0;
+        for (final byte b : bytes) {
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                values[count++] = value;
+                value = 0;
+                shift = 0;
+            } else if ((shift += 7) >= 32) {
+                throw new RuntimeException("Malformed varint in parse event log");
+            }
+        }
+        Arrays.fill(values, count, values.length, -1);
+        return values;
+    }
+
+    private ParseEventLog(TokenBuffer tokens, SymbolTable symbols, int[] events, int eventCount) {
+        this.tokens = tokens;
+        this.symbols = symbols;
+        this.events = events;
+        this.eventCount = eventCount;
+    }
+
+    private final TokenBuffer tokens;
+    private final SymbolTable symbols;
+    private final int[] events;
+    private final int eventCount;
+}
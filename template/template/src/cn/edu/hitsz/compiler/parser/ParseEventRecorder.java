@@ -0,0 +1,155 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 将语法分析过程中的移入, 规约与接受事件记录为紧凑的二进制日志的观察者
+ * <br>
+ * 日志中保存了源程序的文本, 被移入的词法单元 (类型码点与文本在源程序中的位置) 与按发生顺序排列的事件:
+ * 每个事件记录当时的状态编号, 规约事件另记录产生式编号. 之后可以用 {@link ParseEventReplayer} 读取日志,
+ * 不经过词法分析与语法分析, 直接以同样的事件序列驱动 IR 生成等观察者.
+ * 该观察者关心全部事件, 因此开启单产生式旁路或表达式快速通道时, 用同一份分析表记录下的日志与逐步查表时逐字节相同.
+ * <br>
+ * 记录时第 k 次移入的就是词法单元缓冲区中的第 k 个词法单元, 因此该观察者需要在构造时给出被分析的缓冲区.
+ * 词法单元与事件分两段存放, 移入事件本身不再重复记录词法单元, 重放时第 k 个移入事件对应第 k 个词法单元.
+ * <br>
+ * 文件格式 (大端序):
+ * <pre>
+ * int     魔数, 版本号
+ * int     源程序字符数, 词法单元数, 事件数, 词法单元字节数, 事件字节数
+ * char[]  源程序
+ * byte[]  词法单元, 每个词法单元依次为: 类型码点 + 1, 与上一个词法单元文本末尾的距离, 文本长度
+ * byte[]  事件, 移入为 (状态 &lt;&lt; 2 | SHIFT), 规约为 (状态 &lt;&lt; 2 | REDUCE) 与产生式编号, 接受为 (状态 &lt;&lt; 2 | ACCEPT)
+ * </pre>
+ * 两段中的整数均以 7 位一组的变长编码 (varint) 存放, 绝大多数只占一个字节.
+ */
+public class ParseEventRecorder implements ActionObserver {
+    /**
+     * @param tokens 被分析的词法单元缓冲区
+     */
+    public ParseEventRecorder(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        final var index = shiftCount++;
+        final var start = tokens.getStart(index);
+        final var length = tokens.getLength(index);
+        tokenLog.write(tokens.getKindCode(index) + 1);
+        tokenLog.write(start - previousEnd);
+        tokenLog.write(length);
+        previousEnd = start + length;
+
+        eventLog.write(currentStatus.index() << 2 | CompiledLRTable.SHIFT);
+        eventCount++;
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        eventLog.write(currentStatus.index() << 2 | CompiledLRTable.REDUCE);
+        eventLog.write(production.index());
+        eventCount++;
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        eventLog.write(currentStatus.index() << 2 | CompiledLRTable.ACCEPT);
+        eventCount++;
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+    }
+
+    /**
+     * @return 已记录的事件数
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * 将源程序, 被移入的词法单元与已记录的事件写入日志文件
+     *
+     * @param path 日志文件路径
+     */
+    public void dump(String path) {
+        final var source = tokens.getSource();
+        final var buffer = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES + source.length * Character.BYTES
+            + tokenLog.size + eventLog.size);
+        buffer.putInt(MAGIC).putInt(VERSION)
+            .putInt(source.length)
+            .putInt(shiftCount)
+            .putInt(eventCount)
+            .putInt(tokenLog.size)
+            .putInt(eventLog.size);
+        buffer.asCharBuffer().put(source);
+        buffer.position(buffer.position() + source.length * Character.BYTES);
+        buffer.put(tokenLog.bytes, 0, tokenLog.size);
+        buffer.put(eventLog.bytes, 0, eventLog.size);
+        buffer.flip();
+
+        final var file = Path.of(path);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (final var channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 以变长编码追加非负整数的可增长字节数组
+     */
+    private static final class VarintLog {
+        void write(int value) {
+            if (size + MAX_VARINT_BYTES > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private byte[] bytes = new byte[INITIAL_CAPACITY];
+        private int size = 0;
+    }
+
+    static final int MAGIC = 0x50455654;
+    static final int VERSION = 1;
+    static final int HEADER_INTS = 2 + 5;
+    private static final int MAX_VARINT_BYTES = 5;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final TokenBuffer tokens;
+    private final VarintLog tokenLog = new VarintLog();
+    private final VarintLog eventLog = new VarintLog();
+    // 已移入的词法单元数, 即下一次移入的词法单元的下标
+    private int shiftCount = 0;
+    // 上一个移入的词法单元的文本末尾, 只记录与它的距离
+    private int previousEnd = 0;
+    private int eventCount = 0;
+}
@@ -0,0 +1,174 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRLookupTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以 {@link ParseEventRecorder} 记录的分析事件日志驱动观察者
+ * <br>
+ * run 先像词法分析器一样将日志中的标识符依次登记到符号表, 再按日志中的顺序向各观察者发出移入, 规约与接受通知,
+ * 即记录时驱动程序发给 {@link ParseEventRecorder} 的事件序列 (含每个事件的状态编号), 但不需要词法分析器与语法分析驱动程序,
+ * 也不查 ACTION/GOTO 表. 重放的只是记录下来的事件: 记录时的驱动程序发出了什么 (例如压缩分析表在报错前多发出的规约), 重放时就发出什么.
+ * 同一份 {@link ParseEventLog} 只需读取一次, 之后以不同的观察者或设置重新运行后端时, 每次只需新建一个重放器.
+ * <br>
+ * 分析表只用于取得通知中的 Status 与 Production 对象, 必须与记录时使用的分析表相同; 日志中的状态或产生式编号超出分析表范围时 run 报错.
+ * <br>
+ * 与 {@link SyntaxAnalyzer} 相同, 通知只发给声明关心该事件的观察者, 使用共享属性栈的观察者与语法分析时一样读取属性栈.
+ */
+public class ParseEventReplayer {
+    public ParseEventReplayer(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * 注册新的观察者
+     *
+     * @param observer 观察者
+     */
+    public void registerObserver(ActionObserver observer) {
+        observers.add(observer);
+        observer.setSymbolTable(symbolTable);
+        if (observer.usesValueStack()) {
+            observer.setValueStack(valueStack);
+            valueStackUsed = true;
+        }
+    }
+
+    /**
+     * @param table 记录日志时使用的分析表
+     */
+    public void loadLRTable(LRLookupTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @param log 要重放的日志
+     */
+    public void loadLog(ParseEventLog log) {
+        this.log = log;
+    }
+
+    /**
+     * 按日志中的顺序通知各观察者
+     */
+    public void run() {
+        if (log == null || table == null) {
+            throw new RuntimeException("Both parse event log and LR table must be loaded before replaying");
+        }
+
+        symbolTable.merge(log.getSymbols());
+        tokens = log.getTokens();
+        prepareDispatch();
+        valueStack.reset(tokens);
+
+        // 事件在读取时只展开了变长编码, 状态与产生式编号的范围在这里顺带检查; 截断的日志读到的是 -1
+        final var events = log.getEvents();
+        final var eventCount = log.getEventCount();
+        final var statusCount = table.getStatusCount();
+        final var shiftLimit = tokens.size() - 1;
+        int position = 0;
+        int tokenIndex = 0;
+        for (int i = 0; i < eventCount; i++) {
+            final int event = events[position++];
+            final int state = event >>> 2;
+            if (state >= statusCount) {
+                throw new RuntimeException("State %d in parse event log is out of LR table".formatted(state));
+            }
+            switch (event & 3) {
+                case CompiledLRTable.SHIFT -> {
+                    if (tokenIndex == shiftLimit) {
+                        throw new RuntimeException("More shifts than tokens in parse event log");
+                    }
+                    notifyShift(state, tokenIndex++);
+                }
+                case CompiledLRTable.REDUCE -> notifyReduce(state, events[position++]);
+                case CompiledLRTable.ACCEPT -> notifyAccept(state);
+                default -> throw new RuntimeException("Illegal event in parse event log: " + event);
+            }
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private void notifyShift(int state, int tokenIndex) {
+        if (valueStackUsed) {
+            valueStack.shift(tokenIndex);
+        }
+        if (shiftListeners.length != 0) {
+            final var status = table.getStatus(state);
+            final var token = tokens.get(tokenIndex);
+            for (final var listener : shiftListeners) {
+                listener.whenShift(status, token);
+            }
+        }
+    }
+
+    private void notifyReduce(int state, int production) {
+        if (production < 0 || production >= reduceListeners.length) {
+            throw new RuntimeException("Production %d in parse event log is out of grammar".formatted(production));
+        }
+        final var listeners = reduceListeners[production];
+        if (valueStackUsed) {
+            valueStack.beginReduce(table.lengthOf(production));
+        }
+        if (listeners.length != 0) {
+            final var status = table.getStatus(state);
+            final var reduced = table.getProduction(production);
+            for (final var listener : listeners) {
+                listener.whenReduce(status, reduced);
+            }
+        }
+        if (valueStackUsed) {
+            valueStack.endReduce();
+        }
+    }
+
+    private void notifyAccept(int state) {
+        if (acceptListeners.length != 0) {
+            final var status = table.getStatus(state);
+            for (final var listener : acceptListeners) {
+                listener.whenAccept(status);
+            }
+        }
+    }
+
+    /**
+     * 按各观察者声明的兴趣建立分派表, 与 {@link SyntaxAnalyzer} 相同
+     */
+    private void prepareDispatch() {
+        shiftListeners = observers.stream().filter(ActionObserver::caresAboutShift).toArray(ActionObserver[]::new);
+        acceptListeners = observers.stream().filter(ActionObserver::caresAboutAccept).toArray(ActionObserver[]::new);
+
+        final var productions = GrammarInfo.getProductionsInOrder();
+        final var maxIndex = productions.stream().mapToInt(Production::index).max().orElse(-1);
+        reduceListeners = new ActionObserver[maxIndex + 1][];
+        for (int i = 0; i <= maxIndex; i++) {
+            reduceListeners[i] = new ActionObserver[0];
+        }
+        for (final var production : productions) {
+            reduceListeners[production.index()] = observers.stream()
+                .filter(observer -> observer.caresAbout(production))
+                .toArray(ActionObserver[]::new);
+        }
+    }
+
+    private final SymbolTable symbolTable;
+    private final List<ActionObserver> observers = new ArrayList<>();
+    private LRLookupTable table;
+    private ParseEventLog log;
+    // 正在重放的日志中的词法单元
+    private TokenBuffer tokens;
+    // 按观察者声明的兴趣建立的分派表
+    private ActionObserver[] shiftListeners = new ActionObserver[0];
+    private ActionObserver[][] reduceListeners = new ActionObserver[0][];
+    private ActionObserver[] acceptListeners = new ActionObserver[0];
+    private final ValueStack valueStack = new ValueStack();
+    private boolean valueStackUsed = false;
+}
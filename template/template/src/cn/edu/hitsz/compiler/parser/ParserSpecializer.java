@@ -0,0 +1,318 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+/**
+ * 将 LR 分析表特化为 Java 代码的工具
+ * <br>
+ * 查表驱动程序的每一步都要读取 ACTION 表, 解码动作, 再读取产生式长度与 GOTO 表. 对于固定的文法, 这些数据都是常量,
+ * 因此可以为每个状态生成一个方法, 直接对词法单元的码点做 switch, 并把移入的目标状态, 规约的产生式长度与 GOTO 目标都写成字面量,
+ * JIT 看到的就是没有间接访存的直线代码.
+ * <br>
+ * 生成的类与 {@link SyntaxAnalyzer} 处于同一个包中, 通过它的 notifyShift/notifyReduce/notifyAccept 通知观察者,
+ * 因此观察者的行为与查表驱动完全一致. 生成的源代码在内存中用 javax.tools 编译, 再通过
+ * {@link MethodHandles.Lookup#defineHiddenClass} 定义为隐藏类, 不写出任何文件, 也不会与其它特化结果重名.
+ * <br>
+ * HotSpot 不会编译超过 8000 字节码的方法, 所以状态分派与 GOTO 查找都按 {@link #CASES_PER_METHOD} 个分支拆成两级 switch.
+ */
+public class ParserSpecializer {
+    /**
+     * 为分析表生成特化的分析器并加载
+     *
+     * @param table 编译后的分析表
+     * @return 特化后的分析器; 当前运行环境没有 Java 编译器 (如仅安装了 JRE) 时为空
+     */
+    public static Optional<SpecializedParser> compile(CompiledLRTable table) {
+        final var compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return Optional.empty();
+        }
+
+        final var source = generateSource(table);
+        final var classBytes = new ByteArrayOutputStream();
+        final var standardManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        final var fileManager = new ForwardingJavaFileManager<>(standardManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                       JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classBytes;
+                    }
+                };
+            }
+        };
+        final var sourceFile = new SimpleJavaFileObject(
+            URI.create("string:///" + QUALIFIED_NAME.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+            JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        final var diagnostics = new StringWriter();
+        final var options = List.of("-classpath", System.getProperty("java.class.path"), "-proc:none");
+        final boolean success = compiler.getTask(diagnostics, fileManager, null, options, null, List.of(sourceFile)).call();
+        if (!success) {
+            throw new RuntimeException("Failed to compile specialized parser:\n" + diagnostics);
+        }
+
+        try {
+            final var lookup = MethodHandles.lookup().defineHiddenClass(classBytes.toByteArray(), true);
+            final var constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            final var entry = (SpecializedParser.Entry) constructor.invoke();
+            return Optional.of(new SpecializedParser(table, source, entry));
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to load specialized parser", e);
+        }
+    }
+
+    /**
+     * 生成特化分析器的 Java 源代码, 可用于调试或离线编译
+     *
+     * @param table 编译后的分析表
+     * @return 源代码
+     */
+    public static String generateSource(CompiledLRTable table) {
+        return new ParserSpecializer(table).generate();
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private ParserSpecializer(CompiledLRTable table) {
+        this.table = table;
+        this.terminalCodes = TokenKind.allAllowedTokenKinds().values().stream()
+            .mapToInt(TokenKind::getCode).sorted().toArray();
+    }
+
+    private String generate() {
+        // 每个状态上: 动作 -> 产生该动作的码点. 出现过的规约所涉及的非终结符才需要生成 GOTO 方法
+        final var stateCount = table.getStatusCount();
+        final var actionsByState = new ArrayList<LinkedHashMap<Integer, List<Integer>>>();
+        final var usedHeads = new TreeSet<Integer>();
+        for (int state = 0; state < stateCount; state++) {
+            final var actions = new LinkedHashMap<Integer, List<Integer>>();
+            for (final var code : terminalCodes) {
+                final var action = table.action(state, code);
+                if (CompiledLRTable.kindOf(action) == CompiledLRTable.ERROR) {
+                    continue;
+                }
+                actions.computeIfAbsent(action, a -> new ArrayList<>()).add(code);
+                if (CompiledLRTable.kindOf(action) == CompiledLRTable.REDUCE) {
+                    usedHeads.add(table.headOf(CompiledLRTable.operandOf(action)));
+                }
+            }
+            actionsByState.add(actions);
+        }
+
+        out.append("""
+            package %s;
+
+            import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+
+            import java.util.Arrays;
+
+            /**
+             * 由 %s 根据 LR 分析表生成, 共 %d 个状态, 请勿手动修改
+             */
+            final class %s implements SpecializedParser.Entry {
+                private static final int CONTINUE = 0;
+                private static final int ACCEPTED = 1;
+                private static final int REJECTED = 2;
+
+                private final SyntaxAnalyzer analyzer;
+                private final TokenBuffer tokens;
+                private int[] stack;
+                private int top;
+                private int index;
+
+                public %4$s() {
+                    this(null, null);
+                }
+
+                private %4$s(SyntaxAnalyzer analyzer, TokenBuffer tokens) {
+                    this.analyzer = analyzer;
+                    this.tokens = tokens;
+                    this.stack = new int[64];
+                }
+
+                @Override
+                public boolean parse(SyntaxAnalyzer analyzer, TokenBuffer tokens) {
+                    return new %4$s(analyzer, tokens).run();
+                }
+
+                private boolean run() {
+                    stack[0] = %5$d;
+                    while (true) {
+                        final int result = step(stack[top], tokens.getKindCode(index));
+                        if (result != CONTINUE) {
+                            return result == ACCEPTED;
+                        }
+                    }
+                }
+
+                private int push(int state) {
+                    if (state < 0) {
+                        return REJECTED;
+                    }
+                    if (++top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top] = state;
+                    return CONTINUE;
+                }
+            """.formatted(PACKAGE, ParserSpecializer.class.getSimpleName(), stateCount, CLASS_NAME, table.getInitState()));
+
+        final var states = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            states[state] = state;
+        }
+        emitSwitch("int step(int state, int code)", "state", states,
+            state -> "return s%d(code);".formatted(state), "REJECTED");
+
+        for (int state = 0; state < stateCount; state++) {
+            emitState(state, actionsByState.get(state));
+        }
+
+        for (final var head : usedHeads) {
+            final var targets = new TreeMap<Integer, Integer>();
+            for (int state = 0; state < stateCount; state++) {
+                final var target = table.gotoState(state, head);
+                if (target >= 0) {
+                    targets.put(state, target);
+                }
+            }
+            final var keys = targets.keySet().stream().mapToInt(Integer::intValue).toArray();
+            emitSwitch("static int goto%d(int state)".formatted(head), "state", keys,
+                state -> "return %d;".formatted(targets.get(state)), "-1");
+        }
+
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private void emitState(int state, LinkedHashMap<Integer, List<Integer>> actions) {
+        out.append("\n    private int s%d(int code) {\n".formatted(state));
+        out.append("        switch (code) {\n");
+        actions.forEach((action, codes) -> {
+            for (final var code : codes) {
+                out.append("            case %d:\n".formatted(code));
+            }
+
+            final var operand = CompiledLRTable.operandOf(action);
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    out.append("                analyzer.notifyShift(%d, index);\n".formatted(state));
+                    out.append("                index++;\n");
+                    out.append("                return push(%d);\n".formatted(operand));
+                }
+                case CompiledLRTable.REDUCE -> {
+                    out.append("                analyzer.notifyReduce(%d, %d);\n".formatted(state, operand));
+                    final var length = table.lengthOf(operand);
+                    if (length != 0) {
+                        out.append("                top -= %d;\n".formatted(length));
+                    }
+                    out.append("                return push(goto%d(stack[top]));\n".formatted(table.headOf(operand)));
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    out.append("                analyzer.notifyAccept(%d);\n".formatted(state));
+                    out.append("                return ACCEPTED;\n");
+                }
+                default -> throw new RuntimeException("Unknown action: " + action);
+            }
+        });
+        out.append("            default:\n");
+        out.append("                return REJECTED;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    /**
+     * 生成一个对 selector 做 switch 的方法, 分支数超过 {@link #CASES_PER_METHOD} 时按 selector 的高位拆成两级
+     *
+     * @param signature    方法签名 (不含访问修饰符), 方法名之后的部分会被拆分后的子方法沿用
+     * @param selector     被 switch 的参数名
+     * @param keys         升序的各分支取值
+     * @param body         每个分支的语句
+     * @param defaultValue 没有命中任何分支时的返回值
+     */
+    private void emitSwitch(String signature, String selector, int[] keys, IntFunction<String> body, String defaultValue) {
+        if (keys.length <= CASES_PER_METHOD) {
+            emitFlatSwitch(signature, selector, keys, 0, keys.length, body, defaultValue);
+            return;
+        }
+
+        // signature 形如 "int step(int state, int code)", 子方法在方法名后加上高位的取值
+        final var nameEnd = signature.indexOf('(');
+        final var nameStart = signature.lastIndexOf(' ', nameEnd) + 1;
+        final var name = signature.substring(nameStart, nameEnd);
+        final var arguments = signature.substring(nameEnd + 1, signature.length() - 1).replaceAll("\\w+ (\\w+)", "$1");
+
+        final var groups = new ArrayList<Integer>();
+        int from = 0;
+        while (from < keys.length) {
+            final var group = keys[from] >>> GROUP_BITS;
+            int to = from;
+            while (to < keys.length && keys[to] >>> GROUP_BITS == group) {
+                to++;
+            }
+            final var groupSignature = signature.substring(0, nameEnd) + "_" + group + signature.substring(nameEnd);
+            emitFlatSwitch(groupSignature, selector, keys, from, to, body, defaultValue);
+            groups.add(group);
+            from = to;
+        }
+
+        final var groupKeys = groups.stream().mapToInt(Integer::intValue).toArray();
+        emitFlatSwitch(signature, selector + " >>> " + GROUP_BITS, groupKeys, 0, groupKeys.length,
+            group -> "return %s_%d(%s);".formatted(name, group, arguments), defaultValue);
+    }
+
+    private void emitFlatSwitch(String signature, String selector, int[] keys, int from, int to,
+                                IntFunction<String> body, String defaultValue) {
+        out.append("\n    private %s {\n".formatted(signature));
+        out.append("        switch (%s) {\n".formatted(selector));
+        for (int i = from; i < to; i++) {
+            out.append("            case %d:\n".formatted(keys[i]));
+            out.append("                %s\n".formatted(body.apply(keys[i])));
+        }
+        out.append("            default:\n");
+        out.append("                return %s;\n".formatted(defaultValue));
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    // 每个 switch 方法的最大分支数, 需为 2 的幂
+    private static final int GROUP_BITS = 8;
+    private static final int CASES_PER_METHOD = 1 << GROUP_BITS;
+
+    private static final String PACKAGE = ParserSpecializer.class.getPackageName();
+    private static final String CLASS_NAME = "GeneratedLRParser";
+    private static final String QUALIFIED_NAME = PACKAGE + "." + CLASS_NAME;
+
+    private final CompiledLRTable table;
+    private final int[] terminalCodes;
+    private final StringBuilder out = new StringBuilder();
+}
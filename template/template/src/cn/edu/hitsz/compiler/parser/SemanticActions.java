@@ -0,0 +1,97 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按产生式文本绑定的语义动作表
+ * <br>
+ * 观察者用 {@link #on(String, ReduceAction)} 以产生式的文本 (如 {@code "E -> E + A"}, 与 grammar.txt 中的写法相同, 不含分号)
+ * 登记规约时要执行的动作, 而不是在 whenReduce 中对产生式编号做 switch. 第一次使用时, 各文本通过
+ * {@link GrammarInfo#getProductionByText(String)} 解析为产生式, 编译成一个以产生式编号为下标的动作数组;
+ * 之后每次规约的分派只是一次数组读取加一次调用.
+ * <br>
+ * 调整 grammar.txt 中产生式的顺序不会影响动作与产生式的对应关系; 若登记的产生式已不在文法中, 编译时直接报错,
+ * 而不是悄悄地把动作挂到别的产生式上.
+ */
+public final class SemanticActions {
+    /**
+     * 规约时执行的语义动作
+     */
+    @FunctionalInterface
+    public interface ReduceAction {
+        /**
+         * @param production 被规约的产生式
+         */
+        void run(Production production);
+    }
+
+    /**
+     * 登记按某产生式规约时要执行的动作
+     *
+     * @param productionText 产生式的文本
+     * @param action         语义动作
+     * @return this, 以便连续登记
+     */
+    public SemanticActions on(String productionText, ReduceAction action) {
+        if (actions != null) {
+            throw new RuntimeException("Semantic actions are already compiled");
+        }
+        if (registered.putIfAbsent(productionText, action) != null) {
+            throw new RuntimeException("Duplicate semantic action for production: " + productionText);
+        }
+        return this;
+    }
+
+    /**
+     * @param production 产生式
+     * @return 是否为该产生式登记了动作, 可直接用于 {@link ActionObserver#caresAbout(Production)}
+     */
+    public boolean handles(Production production) {
+        final var compiled = compiled();
+        final var index = production.index();
+        return index < compiled.length && compiled[index] != null;
+    }
+
+    /**
+     * 执行为该产生式登记的动作, 没有登记时什么也不做
+     *
+     * @param production 被规约的产生式
+     */
+    public void run(Production production) {
+        final var compiled = compiled();
+        final var index = production.index();
+        if (index < compiled.length) {
+            final var action = compiled[index];
+            if (action != null) {
+                action.run(production);
+            }
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private ReduceAction[] compiled() {
+        if (actions == null) {
+            actions = compile();
+        }
+        return actions;
+    }
+
+    private ReduceAction[] compile() {
+        final var maxIndex = GrammarInfo.getProductionsInOrder().stream().mapToInt(Production::index).max().orElse(-1);
+        final var result = new ReduceAction[maxIndex + 1];
+        for (final var entry : registered.entrySet()) {
+            result[GrammarInfo.getProductionByText(entry.getKey()).index()] = entry.getValue();
+        }
+        return result;
+    }
+
+    // 登记的动作, 以产生式文本为键
+    private final Map<String, ReduceAction> registered = new LinkedHashMap<>();
+    // 以产生式编号为下标的动作, 第一次使用时编译
+    private ReduceAction[] actions = null;
+}
@@ -8,14 +8,17 @@ import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
-import java.util.Objects;
-import java.util.Stack;
-
 // TODO: 实验三: 实现语义分析
 public class SemanticAnalyzer implements ActionObserver {
 
     public SymbolTable table;
-    private final Stack<Symbol> tokenStack = new Stack<>();
+    // 驱动程序维护的共享属性栈, D 的类型存放在其中
+    private ValueStack values;
+    // 只有声明语句相关的产生式需要处理
+    private final SemanticActions actions = new SemanticActions()
+        // 将符号表中id的type更新为D的type
+        .on("S -> D id", p -> this.table.get(values.text(1)).setType(values.type(0)))
+        .on("D -> int", p -> values.setType(SourceCodeType.Int));
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -23,47 +26,41 @@ public class SemanticAnalyzer implements ActionObserver {
         // no action
     }
 
+    @Override
+    public boolean caresAboutAccept() {
+        return false;
+    }
+
     @Override
     public void whenReduce(Status currentStatus, Production production) {
         // TODO: 该过程在遇到 reduce production 时要采取的代码动作
-        Symbol curToken1, curToken2;
-        Symbol curNonTerminal;
-        switch(production.index()){
-            case 4:     //S -> D id;
-                curToken1 = tokenStack.pop();   //弹出id
-                curToken2 = tokenStack.pop();   //弹出D
-                // 将符号表中id的type更新为D的type
-                this.table.get(curToken1.token.getText()).setType(curToken2.type);
-                curNonTerminal = new Symbol(production.head());
-                curNonTerminal.type = null;
-                tokenStack.push(curNonTerminal);
-                break;
-            case 5:     //D -> int;
-                curToken1 = tokenStack.pop();
-                curNonTerminal = new Symbol(production.head());
-                curNonTerminal.type = curToken1.type;
-                tokenStack.push(curNonTerminal);
-                break;
-            default:
-                for(int i=0; i<production.body().size(); i++){
-                    tokenStack.pop();
-                }
-                tokenStack.push(new Symbol(production.head()));
-        }
+        actions.run(production);
+    }
+
+    @Override
+    public boolean caresAbout(Production production) {
+        return actions.handles(production);
     }
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
         // TODO: 该过程在遇到 shift 时要采取的代码动作
-        Symbol curSymbol = new Symbol(currentToken);
+        // 词法单元已由驱动程序压入属性栈, 无需额外动作
+    }
 
-        if(Objects.equals(currentToken.getKindId(), "int")){
-            curSymbol.type = SourceCodeType.Int;
-        }else{
-            curSymbol.type = null;
-        }
+    @Override
+    public boolean caresAboutShift() {
+        return false;
+    }
 
-        tokenStack.push(curSymbol);
+    @Override
+    public boolean usesValueStack() {
+        return true;
+    }
+
+    @Override
+    public void setValueStack(ValueStack stack) {
+        this.values = stack;
     }
 
     @Override
@@ -0,0 +1,56 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+
+/**
+ * 针对某一张 LR 分析表特化生成的语法分析器, 由 {@link ParserSpecializer#compile(CompiledLRTable)} 构造
+ * <br>
+ * 通过 {@link SyntaxAnalyzer#loadSpecializedParser(SpecializedParser)} 加载后, {@link SyntaxAnalyzer#run()}
+ * 将使用生成的代码代替查表循环, 观察者收到的通知与查表驱动时完全相同.
+ */
+public final class SpecializedParser {
+    /**
+     * @return 生成该分析器所用的分析表
+     */
+    public CompiledLRTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return 生成的 Java 源代码
+     */
+    public String getSource() {
+        return source;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 生成的类所实现的接口, 对 {@link SyntaxAnalyzer} 之外不可见
+     */
+    interface Entry {
+        /**
+         * 分析 tokens, 并通过 analyzer 的 notifyShift/notifyReduce/notifyAccept 通知观察者
+         *
+         * @param analyzer 驱动程序
+         * @param tokens   词法单元缓冲区
+         * @return 是否成功接受
+         */
+        boolean parse(SyntaxAnalyzer analyzer, TokenBuffer tokens);
+    }
+
+    SpecializedParser(CompiledLRTable table, String source, Entry entry) {
+        this.table = table;
+        this.source = source;
+        this.entry = entry;
+    }
+
+    boolean parse(SyntaxAnalyzer analyzer, TokenBuffer tokens) {
+        return entry.parse(analyzer, tokens);
+    }
+
+    private final CompiledLRTable table;
+    private final String source;
+    private final Entry entry;
+}
@@ -2,12 +2,13 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
 import cn.edu.hitsz.compiler.parser.table.*;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
 
 //TODO: 实验二: 实现 LR 语法分析驱动程序
 
@@ -22,10 +23,27 @@ import java.util.Stack;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
-    private List<Token> tokenList = new ArrayList();
-    private LRTable lrtable;
-    private final Stack<Symbol> tokenStack = new Stack<>();   //符号栈
-    private final Stack<Status> statusStack = new Stack<>();   //状态栈
+    private TokenBuffer tokens;
+    private LRLookupTable table;
+    // 针对分析表特化生成的分析器, 为 null 时使用查表驱动
+    private SpecializedParser specializedParser = null;
+    // 是否跳过单产生式的规约, 见 setUnitReductionBypass
+    private boolean unitReductionBypass = false;
+    // 按观察者声明的兴趣建立的分派表: 关心移入/接受的观察者, 以及下标为产生式编号的关心该产生式规约的观察者
+    private ActionObserver[] shiftListeners = new ActionObserver[0];
+    private ActionObserver[][] reduceListeners = new ActionObserver[0][];
+    private ActionObserver[] acceptListeners = new ActionObserver[0];
+    // 全部观察者, 供不在分派表中的产生式编号使用
+    private ActionObserver[] allObservers = new ActionObserver[0];
+    // 注册新的观察者之后分派表需要重新建立
+    private boolean dispatchStale = true;
+    // 是否启用表达式快速通道, 见 setExpressionFastPath
+    private boolean expressionFastPath = false;
+    // 状态栈, 只存放状态编号
+    private int[] stateStack = new int[INITIAL_STACK_CAPACITY];
+    // 与状态栈同步移入/规约的共享属性栈, 只有存在使用它的观察者时才维护
+    private final ValueStack valueStack = new ValueStack();
+    private boolean valueStackUsed = false;
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
@@ -39,39 +57,47 @@ public class SyntaxAnalyzer {
     public void registerObserver(ActionObserver observer) {
         observers.add(observer);
         observer.setSymbolTable(symbolTable);
+        if (observer.usesValueStack()) {
+            observer.setValueStack(valueStack);
+            valueStackUsed = true;
+        }
+        dispatchStale = true;
     }
 
     /**
-     * 在执行 shift 动作时通知各个观察者
+     * 在执行 shift 动作时通知关心移入的观察者, 见 {@link ActionObserver#caresAboutShift()}
      *
      * @param currentStatus 当前状态
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
+        prepareDispatch();
+        for (final var listener : shiftListeners) {
             listener.whenShift(currentStatus, currentToken);
         }
     }
 
     /**
-     * 在执行 reduce 动作时通知各个观察者
+     * 在执行 reduce 动作时通知关心该产生式的观察者, 见 {@link ActionObserver#caresAbout(Production)}
      *
      * @param currentStatus 当前状态
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
+        prepareDispatch();
+        for (final var listener : reduceListenersOf(production.index())) {
             listener.whenReduce(currentStatus, production);
         }
     }
 
     /**
-     * 在执行 accept 动作时通知各个观察者
+     * 在执行 accept 动作时通知关心接受的观察者, 见 {@link ActionObserver#caresAboutAccept()}
      *
      * @param currentStatus 当前状态
      */
     public void callWhenInAccept(Status currentStatus) {
-        for (final var listener : observers) {
+        prepareDispatch();
+        for (final var listener : acceptListeners) {
             listener.whenAccept(currentStatus);
         }
     }
@@ -82,9 +108,16 @@ public class SyntaxAnalyzer {
         // 需要注意的是, 在实现驱动程序的过程中, 你会需要面对只读取一个 token 而不能消耗它的情况,
         // 在自行设计的时候请加以考虑此种情况
         // throw new NotImplementedException();
-        for (Token token: tokens) {
-            tokenList.add(token);
-        }
+        loadTokens(TokenBuffer.of(tokens));
+    }
+
+    /**
+     * 直接加载词法分析器产生的词法单元缓冲区, 不为每个词法单元构造 Token 对象
+     *
+     * @param tokens 词法单元缓冲区
+     */
+    public void loadTokens(TokenBuffer tokens) {
+        this.tokens = tokens;
     }
 
     public void loadLRTable(LRTable table) {
@@ -92,7 +125,60 @@ public class SyntaxAnalyzer {
         // 你可以自行选择要如何使用该表格:
         // 是直接对 LRTable 调用 getAction/getGoto, 抑或是直接将 initStatus 存起来使用
         // throw new NotImplementedException();
-        this.lrtable=table;
+        loadLRTable(CompiledLRTable.compile(table));
+    }
+
+    /**
+     * 直接加载编译为数组形式的 LR 分析表, 如稠密的 {@link CompiledLRTable} 或压缩的 {@link CompressedLRTable}
+     * <br>
+     * 使用默认规约的压缩表在非法输入上可能先发出若干稠密表不会执行的规约, 再报错, 观察者 (如 IR 生成器) 会据此产生多余的输出;
+     * 需要在报错前与稠密表完全一致时使用 {@code CompressedLRTable.compress(table, false)}, 见 {@link CompressedLRTable}.
+     *
+     * @param table 编译后的分析表
+     */
+    public void loadLRTable(LRLookupTable table) {
+        this.table = table;
+        this.specializedParser = null;
+    }
+
+    /**
+     * 加载针对分析表特化生成的分析器, 之后的 run 将执行生成的代码而不是查表, 观察者收到的通知不变
+     *
+     * @param parser 特化后的分析器, 见 {@link ParserSpecializer}
+     */
+    public void loadSpecializedParser(SpecializedParser parser) {
+        this.table = parser.getTable();
+        this.specializedParser = parser;
+    }
+
+    /**
+     * 设置是否启用单产生式旁路
+     * <br>
+     * 对于 {@code B -> id}, {@code A -> B}, {@code E -> A} 这样的单产生式链, 一个标识符要经过三次规约才能成为表达式.
+     * 启用旁路后, 驱动程序在将新状态压栈之前先查看它在当前向前看符号上的动作, 若是按单产生式 X -> Y 规约,
+     * 就直接转移到栈中下一层状态在 X 上的 GOTO 目标, 不再压入又立即弹出该状态, 并沿着单产生式链一直跳下去.
+     * <br>
+     * 被跳过的规约与其它规约一样只通知 {@link ActionObserver#caresAbout(Production)} 返回 true 的观察者, 通知的顺序与状态同不启用旁路时完全相同,
+     * 所以关心全部产生式的观察者 (如 {@link ProductionCollector}) 得到的规约序列不变. 该选项只作用于查表驱动, 不影响特化的分析器.
+     *
+     * @param enabled 是否启用
+     */
+    public void setUnitReductionBypass(boolean enabled) {
+        this.unitReductionBypass = enabled;
+    }
+
+    /**
+     * 设置是否启用表达式的算符优先快速通道 (混合模式)
+     * <br>
+     * 启用后, LR 自动机每进入一个只可能开始表达式 E 的状态 (如 {@code S -> id = . E}), 就把随后的表达式交给
+     * {@link ExpressionParser} 直接在词法单元缓冲区上按优先级分析, 分析完后压入 GOTO(状态, E), 在表达式之后的词法单元
+     * (通常是 Semicolon) 处继续查表. 快速通道同时推进 LR 状态, 观察者收到的移入与规约事件及其 Status 都与查表驱动相同.
+     * 文法中没有对应的表达式子文法时该选项不起作用. 该选项只作用于查表驱动, 不影响特化的分析器.
+     *
+     * @param enabled 是否启用
+     */
+    public void setExpressionFastPath(boolean enabled) {
+        this.expressionFastPath = enabled;
     }
 
     public void run() {
@@ -101,49 +187,212 @@ public class SyntaxAnalyzer {
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
 
-        //初始化符号栈和状态栈
-        statusStack.push(lrtable.getInit());
-        tokenStack.push(new Symbol(Token.eof()));
-
-        int i=0;
-        boolean flag = true;
-        do{
-            Token currentToken = tokenList.get(i);
-            Status currentStatus = statusStack.peek();
-            Action currentAction = lrtable.getAction(currentStatus, currentToken);
-
-            switch (currentAction.getKind()) {
-                case Shift: {
-                    callWhenInShift(currentStatus, currentToken);
-                    statusStack.push(currentAction.getStatus());
-                    tokenStack.push(new Symbol(currentToken));
+        // 观察者在分析过程中不会改变, 在开始时按它们声明的兴趣建立一次分派表
+        dispatchStale = true;
+        prepareDispatch();
+        valueStack.reset(tokens);
+
+        if (specializedParser != null) {
+            if (!specializedParser.parse(this, tokens)) {
+                System.out.println("error!");
+            }
+            return;
+        }
+
+        // 状态栈为可增长的 int 数组, 稳定运行时的移入/规约循环不分配任何对象;
+        // 分析过程没有递归, 任意深的嵌套表达式都只会让状态栈变长
+        int top = 0;
+        stateStack[top] = table.getInitState();
+        final var expressionParser = expressionFastPath ? ExpressionParser.forTable(table) : null;
+
+        int i = 0;
+        while (true) {
+            final int state = stateStack[top];
+            if (expressionParser != null && expressionParser.isExpressionStart(state)) {
+                i = expressionParser.parse(this, tokens, state, i);
+                if (i < 0) {
+                    System.out.println("error!");
+                    return;
+                }
+                int next = expressionParser.stateAfter(state);
+                if (unitReductionBypass) {
+                    next = bypassUnitReductions(top, next, tokens.getKindCode(i));
+                }
+                top = push(top, next);
+                continue;
+            }
+
+            final int action = table.action(state, tokens.getKindCode(i));
+
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    notifyShift(state, i);
                     i++;
-                    break;
+                    int next = CompiledLRTable.operandOf(action);
+                    if (unitReductionBypass) {
+                        next = bypassUnitReductions(top, next, tokens.getKindCode(i));
+                    }
+                    top = push(top, next);
                 }
-                case Reduce: {
-                    Production currentProduction = currentAction.getProduction();
-                    callWhenInReduce(currentStatus, currentProduction);
-                    for (int j=0; j<currentProduction.body().size(); j++) {
-                        statusStack.pop();
-                        tokenStack.pop();
+                case CompiledLRTable.REDUCE -> {
+                    final int production = CompiledLRTable.operandOf(action);
+                    notifyReduce(state, production);
+                    top -= table.lengthOf(production);
+                    int next = table.gotoState(stateStack[top], table.headOf(production));
+                    if (next < 0) {
+                        System.out.println("error!");
+                        return;
+                    }
+                    if (unitReductionBypass) {
+                        next = bypassUnitReductions(top, next, tokens.getKindCode(i));
                     }
-                    statusStack.push(lrtable.getGoto(statusStack.peek(),currentProduction.head()));
-                    tokenStack.push(new Symbol(currentProduction.head()));
-                    break;
+                    top = push(top, next);
                 }
-                case Error:{
-                    currentAction.error();
-                    System.out.println("error!");
-                    flag = false;
-                    break;
+                case CompiledLRTable.ACCEPT -> {
+                    notifyAccept(state);
+                    return;
                 }
-                case Accept: {
-                    callWhenInAccept(currentStatus);
-                    flag = false;
-                    break;
+                default -> {
+                    System.out.println("error!");
+                    return;
                 }
-                default: flag = false;
             }
-        }while(flag);
+        }
     }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 在执行 shift 动作时通知关心移入的观察者, 只有存在这样的观察者时才构造 Status 与 Token 对象
+     *
+     * @param state      当前状态编号
+     * @param tokenIndex 被移入的词法单元的下标
+     */
+    void notifyShift(int state, int tokenIndex) {
+        if (valueStackUsed) {
+            valueStack.shift(tokenIndex);
+        }
+        final var listeners = shiftListeners;
+        if (listeners.length != 0) {
+            final var status = table.getStatus(state);
+            final var token = tokens.get(tokenIndex);
+            for (final var listener : listeners) {
+                listener.whenShift(status, token);
+            }
+        }
+    }
+
+    /**
+     * 在执行 reduce 动作时通知关心该产生式的观察者: 一次数组读取得到观察者列表, 列表为空时不构造任何对象.
+     * 共享属性栈在通知前后分别准备产生式头的槽位与完成弹栈, 因此即使没有观察者关心该产生式, 属性栈也与状态栈保持同步
+     *
+     * @param state      当前状态编号
+     * @param production 待规约的产生式编号
+     */
+    void notifyReduce(int state, int production) {
+        final var listeners = reduceListenersOf(production);
+        if (valueStackUsed) {
+            valueStack.beginReduce(table.lengthOf(production));
+        }
+        if (listeners.length != 0) {
+            final var status = table.getStatus(state);
+            final var reduced = table.getProduction(production);
+            for (final var listener : listeners) {
+                listener.whenReduce(status, reduced);
+            }
+        }
+        if (valueStackUsed) {
+            valueStack.endReduce();
+        }
+    }
+
+    /**
+     * 在执行 accept 动作时通知关心接受的观察者
+     *
+     * @param state 当前状态编号
+     */
+    void notifyAccept(int state) {
+        final var listeners = acceptListeners;
+        if (listeners.length != 0) {
+            final var status = table.getStatus(state);
+            for (final var listener : listeners) {
+                listener.whenAccept(status);
+            }
+        }
+    }
+
+    /**
+     * 沿着单产生式链跳过规约
+     *
+     * @param top          即将压入的状态之下的栈顶位置
+     * @param next         即将压入的状态
+     * @param terminalCode 当前向前看符号的码点
+     * @return 跳过所有单产生式的规约之后实际应压入的状态
+     */
+    private int bypassUnitReductions(int top, int next, int terminalCode) {
+        while (true) {
+            final int action = table.action(next, terminalCode);
+            if (CompiledLRTable.kindOf(action) != CompiledLRTable.REDUCE) {
+                return next;
+            }
+
+            final int production = CompiledLRTable.operandOf(action);
+            if (table.lengthOf(production) != 1) {
+                return next;
+            }
+
+            // 弹出 next 之后栈顶即为 stateStack[top]; GOTO 出错时留给主循环按原样规约并报错
+            final int target = table.gotoState(stateStack[top], table.headOf(production));
+            if (target < 0) {
+                return next;
+            }
+
+            notifyReduce(next, production);
+            next = target;
+        }
+    }
+
+    /**
+     * 按各观察者声明的兴趣建立分派表, 之后每次通知只需遍历真正关心该动作的观察者
+     */
+    private void prepareDispatch() {
+        if (!dispatchStale) {
+            return;
+        }
+
+        allObservers = observers.toArray(ActionObserver[]::new);
+        shiftListeners = observers.stream().filter(ActionObserver::caresAboutShift).toArray(ActionObserver[]::new);
+        acceptListeners = observers.stream().filter(ActionObserver::caresAboutAccept).toArray(ActionObserver[]::new);
+
+        final var productions = GrammarInfo.getProductionsInOrder();
+        final var maxIndex = productions.stream().mapToInt(Production::index).max().orElse(-1);
+        reduceListeners = new ActionObserver[maxIndex + 1][];
+        for (final var production : productions) {
+            reduceListeners[production.index()] = observers.stream()
+                .filter(observer -> observer.caresAbout(production))
+                .toArray(ActionObserver[]::new);
+        }
+        dispatchStale = false;
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 关心该产生式规约的观察者; 不在文法中的编号 (分派表建立之后才加载的文法) 通知全部观察者
+     */
+    private ActionObserver[] reduceListenersOf(int production) {
+        if (production < reduceListeners.length && reduceListeners[production] != null) {
+            return reduceListeners[production];
+        }
+        return allObservers;
+    }
+
+    private int push(int top, int state) {
+        if (++top == stateStack.length) {
+            stateStack = Arrays.copyOf(stateStack, stateStack.length * 2);
+        }
+        stateStack[top] = state;
+        return top;
+    }
+
+    private static final int INITIAL_STACK_CAPACITY = 64;
 }
@@ -0,0 +1,161 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.symtab.SourceCodeType;
+
+import java.util.Arrays;
+
+/**
+ * 由 LR 驱动程序维护, 供所有观察者共享的属性栈
+ * <br>
+ * 栈中每个文法符号占一个槽位, 槽位中存放该符号的各个属性: 词法单元 (终结符移入时记录其下标, 按需构造 Token 或文本),
+ * 类型以及 IR 值. 驱动程序在移入时压入一个槽位; 在规约时先让产生式体的各槽位留在栈顶, 通知观察者, 再弹出它们并压入产生式头的槽位.
+ * <br>
+ * 观察者在 {@link ActionObserver#whenReduce} 中通过 {@link #token(int)}, {@link #type(int)}, {@link #value(int)}
+ * 读取产生式体第 i 个符号 (从 0 开始) 的属性, 通过 {@link #setType(SourceCodeType)}, {@link #setValue(IRValue)} 写入产生式头的属性.
+ * 与 yacc 的 {@code $$ = $1} 相同, 产生式头的类型与 IR 值默认是产生式体第一个符号的副本, 因此只传递值的单产生式不需要任何动作;
+ * 词法单元只经单产生式向上传递, 其它产生式头的词法单元为 null, 观察者可以据此区分终结符与非终结符.
+ * <br>
+ * 各属性按列存放在几个平行的数组中, 移入与规约都不分配对象.
+ */
+public final class ValueStack {
+    /**
+     * @param i 产生式体中符号的下标
+     * @return 该符号的词法单元, 非终结符且不是由单个词法单元经单产生式得到时为 null
+     */
+    public Token token(int i) {
+        final var index = tokenIndexes[slot(i)];
+        return index < 0 ? null : tokens.get(index);
+    }
+
+    /**
+     * 与 token(i).getText() 相同, 但不构造 Token 对象
+     *
+     * @param i 产生式体中符号的下标
+     * @return 该符号的词法单元的文本
+     */
+    public String text(int i) {
+        final var index = tokenIndexes[slot(i)];
+        if (index < 0) {
+            throw new RuntimeException("Symbol %d of the production being reduced is not a token".formatted(i));
+        }
+        return tokens.getText(index);
+    }
+
+    /**
+     * @param i 产生式体中符号的下标
+     * @return 该符号的类型属性
+     */
+    public SourceCodeType type(int i) {
+        return types[slot(i)];
+    }
+
+    /**
+     * @param i 产生式体中符号的下标
+     * @return 该符号的 IR 值属性
+     */
+    public IRValue value(int i) {
+        return values[slot(i)];
+    }
+
+    /**
+     * @param type 产生式头的类型属性
+     */
+    public void setType(SourceCodeType type) {
+        headType = type;
+    }
+
+    /**
+     * @param value 产生式头的 IR 值属性
+     */
+    public void setValue(IRValue value) {
+        headValue = value;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 开始新的一次分析, 清空属性栈
+     *
+     * @param tokens 被分析的词法单元缓冲区
+     */
+    void reset(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.size = 0;
+        this.base = 0;
+    }
+
+    /**
+     * 移入第 tokenIndex 个词法单元
+     *
+     * @param tokenIndex 词法单元的下标
+     */
+    void shift(int tokenIndex) {
+        ensureCapacity();
+        tokenIndexes[size] = tokenIndex;
+        types[size] = null;
+        values[size] = null;
+        size++;
+    }
+
+    /**
+     * 规约前调用: 产生式体的槽位留在栈顶, 产生式头的类型与 IR 值初始化为第一个符号的副本,
+     * 词法单元只在单产生式时复制, 否则为 -1
+     *
+     * @param length 产生式体的长度
+     */
+    void beginReduce(int length) {
+        base = size - length;
+        if (length == 0) {
+            headTokenIndex = -1;
+            headType = null;
+            headValue = null;
+        } else {
+            headTokenIndex = length == 1 ? tokenIndexes[base] : -1;
+            headType = types[base];
+            headValue = values[base];
+        }
+    }
+
+    /**
+     * 规约后调用: 弹出产生式体的槽位, 压入产生式头的槽位
+     */
+    void endReduce() {
+        size = base;
+        ensureCapacity();
+        tokenIndexes[size] = headTokenIndex;
+        types[size] = headType;
+        values[size] = headValue;
+        size++;
+    }
+
+    private int slot(int i) {
+        return base + i;
+    }
+
+    private void ensureCapacity() {
+        if (size == tokenIndexes.length) {
+            final var capacity = tokenIndexes.length * 2;
+            tokenIndexes = Arrays.copyOf(tokenIndexes, capacity);
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private TokenBuffer tokens;
+    // 各槽位的属性, 非终结符的词法单元下标为 -1
+    private int[] tokenIndexes = new int[INITIAL_CAPACITY];
+    private SourceCodeType[] types = new SourceCodeType[INITIAL_CAPACITY];
+    private IRValue[] values = new IRValue[INITIAL_CAPACITY];
+    private int size = 0;
+    // 正在规约的产生式体的第一个槽位
+    private int base = 0;
+    // 正在规约的产生式头的属性
+    private int headTokenIndex = -1;
+    private SourceCodeType headType = null;
+    private IRValue headValue = null;
+}
@@ -0,0 +1,342 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 编译为稠密数组形式的 LR 分析表
+ * <br>
+ * {@link LRTable} 的每次查表都要经过 Status 中以 Term 为键的 HashMap, 也就是要对终结符的名字求一次哈希.
+ * 该类为每个终结符与非终结符分配一个稠密的序号, 将 ACTION 表与 GOTO 表分别存为按行展开的 int 矩阵,
+ * 使得驱动程序的每一步查表都只是几次数组读取.
+ * <br>
+ * ACTION 表中的每个动作被编码为一个 int: 低两位为动作种类 ({@link #ERROR}, {@link #SHIFT}, {@link #REDUCE}, {@link #ACCEPT}),
+ * 其余位为移入的目标状态或规约的产生式编号. GOTO 表中以 -1 表示错误.
+ * <br>
+ * ACTION 表与 GOTO 表以 IntBuffer 存放: 由 LRTable 编译出的表以堆数组为后备, 从二进制缓存 ({@link LRTableCache}) 读入的表
+ * 直接使用缓存文件映射区域上的视图, 不复制到堆中. 查表只使用绝对位置的 get, 不改变缓冲区的位置, 因此可以被多个线程同时读取.
+ * <br>
+ * 原有的 Status/Action 对象仍然可以通过 {@link #getStatus(int)} 与 {@link #getProduction(int)} 获得, 以便通知观察者与调试.
+ * 从二进制缓存 ({@link LRTableCache}) 读入的表只有稠密数组, 这些对象在第一次被访问时才会构造出来.
+ */
+public class CompiledLRTable implements LRLookupTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作的种类
+     */
+    public static int kindOf(int action) {
+        return action & KIND_MASK;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 移入动作的目标状态, 或规约动作的产生式编号
+     */
+    public static int operandOf(int action) {
+        return action >>> KIND_BITS;
+    }
+
+    /**
+     * 将 LRTable 编译为稠密数组形式
+     *
+     * @param table LR 分析表
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable compile(LRTable table) {
+        final var statuses = table.getStatusInIndexOrder();
+        final var terminals = table.getTerminals();
+        final var nonTerminals = table.getNonTerminals();
+        final var productions = GrammarInfo.getProductionsInOrder();
+
+        // 终结符的序号即其在表头中的位置, 未出现在表头中的 TokenKind 统一映射到最后一个全为错误的列
+        final var maxCode = TokenKind.allAllowedTokenKinds().values().stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        final var terminalColumns = new int[maxCode + 2];
+        Arrays.fill(terminalColumns, terminals.size());
+        for (int column = 0; column < terminals.size(); column++) {
+            terminalColumns[terminals.get(column).getCode() + 1] = column;
+        }
+
+        // 非终结符的序号即其在表头中的位置; 非终结符的等价性由名字决定, 不同来源构造的对象也能对应起来
+        final var nonTerminalColumns = new HashMap<NonTerminal, Integer>();
+        for (int column = 0; column < nonTerminals.size(); column++) {
+            nonTerminalColumns.put(nonTerminals.get(column), column);
+        }
+
+        final var maxProductionIndex = productions.stream().mapToInt(Production::index).max().orElse(0);
+        final var productionArray = new Production[maxProductionIndex + 1];
+        final var reduceLengths = new int[maxProductionIndex + 1];
+        final var reduceHeads = new int[maxProductionIndex + 1];
+        for (final var production : productions) {
+            productionArray[production.index()] = production;
+            reduceLengths[production.index()] = production.body().size();
+            reduceHeads[production.index()] = nonTerminalColumns.getOrDefault(production.head(), -1);
+        }
+
+        final var actionWidth = terminals.size() + 1;
+        final var gotoWidth = nonTerminals.size();
+        final var actions = new int[statuses.size() * actionWidth];
+        final var gotos = new int[statuses.size() * gotoWidth];
+        Arrays.fill(gotos, -1);
+        for (final var status : statuses) {
+            if (status.index() < 0 || status.index() >= statuses.size()) {
+                throw new RuntimeException("Status index %d out of range".formatted(status.index()));
+            }
+
+            for (int column = 0; column < terminals.size(); column++) {
+                actions[status.index() * actionWidth + column] = encode(status.getAction(terminals.get(column)));
+            }
+            for (int column = 0; column < nonTerminals.size(); column++) {
+                final var target = status.getGoto(nonTerminals.get(column));
+                gotos[status.index() * gotoWidth + column] = target.isError() ? -1 : target.index();
+            }
+        }
+
+        final var statusArray = new Status[statuses.size()];
+        for (final var status : statuses) {
+            statusArray[status.index()] = status;
+        }
+
+        final var terminalCodes = terminals.stream().mapToInt(TokenKind::getCode).toArray();
+        final var nonTerminalNames = nonTerminals.stream().map(NonTerminal::getTermName).toArray(String[]::new);
+        final var compiled = new CompiledLRTable(table.getInit().index(), terminalColumns, terminalCodes, nonTerminalNames,
+            IntBuffer.wrap(actions), IntBuffer.wrap(gotos), reduceLengths, reduceHeads);
+        compiled.statuses = statusArray;
+        compiled.productions = productionArray;
+        return compiled;
+    }
+
+    /**
+     * @param state        当前状态
+     * @param terminalCode 当前词法单元类型的码点
+     * @return 编码后的动作
+     */
+    @Override
+    public int action(int state, int terminalCode) {
+        return actions.get(state * actionWidth + terminalColumns[terminalCode + 1]);
+    }
+
+    /**
+     * @param state          规约后栈顶的状态
+     * @param nonTerminalColumn 规约出的非终结符的序号, 见 {@link #headOf(int)}
+     * @return 应转移到的状态, 错误时为 -1
+     */
+    @Override
+    public int gotoState(int state, int nonTerminalColumn) {
+        return gotos.get(state * gotoWidth + nonTerminalColumn);
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式体的长度, 即规约时要弹出的状态数
+     */
+    @Override
+    public int lengthOf(int production) {
+        return reduceLengths[production];
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式头的非终结符序号
+     */
+    @Override
+    public int headOf(int production) {
+        return reduceHeads[production];
+    }
+
+    /**
+     * @return 起始状态
+     */
+    @Override
+    public int getInitState() {
+        return initState;
+    }
+
+    /**
+     * @return 状态数量
+     */
+    @Override
+    public int getStatusCount() {
+        return actions.limit() / actionWidth;
+    }
+
+    /**
+     * @param state 状态编号
+     * @return 对应的 Status 对象
+     */
+    @Override
+    public Status getStatus(int state) {
+        if (statuses == null) {
+            statuses = materializeStatuses();
+        }
+        return statuses[state];
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 对应的 Production 对象
+     */
+    @Override
+    public Production getProduction(int production) {
+        if (productions == null) {
+            productions = new Production[reduceLengths.length];
+            for (final var p : GrammarInfo.getProductionsInOrder()) {
+                productions[p.index()] = p;
+            }
+        }
+        return productions[production];
+    }
+
+    @Override
+    public long footprintBytes() {
+        return (long) Integer.BYTES * (terminalColumns.length + actions.limit() + gotos.limit()
+            + reduceLengths.length + reduceHeads.length);
+    }
+
+    /**
+     * 映射区域上的视图每次读取都比堆数组多几次检查, 对很长的输入逐个查表时约慢几个百分点; 此时可以用该方法复制出一份堆上的表
+     *
+     * @return ACTION 表与 GOTO 表以堆数组为后备的分析表, 本身已是如此时返回自身
+     */
+    public CompiledLRTable onHeap() {
+        if (actions.hasArray() && gotos.hasArray()) {
+            return this;
+        }
+        final var heapActions = new int[actions.limit()];
+        actions.get(0, heapActions);
+        final var heapGotos = new int[gotos.limit()];
+        gotos.get(0, heapGotos);
+        final var copy = new CompiledLRTable(initState, terminalColumns, terminalCodes, nonTerminalNames,
+            IntBuffer.wrap(heapActions), IntBuffer.wrap(heapGotos), reduceLengths, reduceHeads);
+        copy.statuses = statuses;
+        copy.productions = productions;
+        return copy;
+    }
+
+    /**
+     * 将稠密数组还原为对象形式的 LR 分析表, 用于 dumpTable 与调试
+     *
+     * @return 对象形式的 LR 分析表
+     */
+    public LRTable toLRTable() {
+        getStatus(initState);
+        final var terminals = Arrays.stream(terminalCodes).mapToObj(TokenKind::fromCode).toList();
+        final var nonTerminals = Arrays.stream(nonTerminalNames).map(NonTerminal::new).toList();
+        return new LRTable(Arrays.asList(statuses), terminals, nonTerminals);
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    int[] getTerminalColumns() {
+        return terminalColumns;
+    }
+
+    int[] getTerminalCodes() {
+        return terminalCodes;
+    }
+
+    String[] getNonTerminalNames() {
+        return nonTerminalNames;
+    }
+
+    /**
+     * @return ACTION 表, 只应以绝对位置读取
+     */
+    IntBuffer getActions() {
+        return actions;
+    }
+
+    /**
+     * @return GOTO 表, 只应以绝对位置读取
+     */
+    IntBuffer getGotos() {
+        return gotos;
+    }
+
+    int[] getReduceLengths() {
+        return reduceLengths;
+    }
+
+    int[] getReduceHeads() {
+        return reduceHeads;
+    }
+
+    CompiledLRTable(int initState, int[] terminalColumns, int[] terminalCodes, String[] nonTerminalNames,
+                    IntBuffer actions, IntBuffer gotos, int[] reduceLengths, int[] reduceHeads) {
+        this.initState = initState;
+        this.terminalColumns = terminalColumns;
+        this.terminalCodes = terminalCodes;
+        this.nonTerminalNames = nonTerminalNames;
+        this.actionWidth = terminalCodes.length + 1;
+        this.actions = actions;
+        this.gotoWidth = nonTerminalNames.length;
+        this.gotos = gotos;
+        this.reduceLengths = reduceLengths;
+        this.reduceHeads = reduceHeads;
+    }
+
+    private Status[] materializeStatuses() {
+        final var result = new Status[getStatusCount()];
+        for (int state = 0; state < result.length; state++) {
+            result[state] = Status.create(state);
+        }
+
+        final var nonTerminals = Arrays.stream(nonTerminalNames).map(NonTerminal::new).toList();
+        for (int state = 0; state < result.length; state++) {
+            for (int column = 0; column < terminalCodes.length; column++) {
+                final var action = actions.get(state * actionWidth + column);
+                final var decoded = switch (kindOf(action)) {
+                    case SHIFT -> Action.shift(result[operandOf(action)]);
+                    case REDUCE -> Action.reduce(getProduction(operandOf(action)));
+                    case ACCEPT -> Action.accept();
+                    default -> null;
+                };
+                if (decoded != null) {
+                    result[state].setAction(TokenKind.fromCode(terminalCodes[column]), decoded);
+                }
+            }
+            for (int column = 0; column < gotoWidth; column++) {
+                final var target = gotos.get(state * gotoWidth + column);
+                if (target >= 0) {
+                    result[state].setGoto(nonTerminals.get(column), result[target]);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static int encode(Action action) {
+        return switch (action.getKind()) {
+            case Error -> ERROR;
+            case Accept -> ACCEPT;
+            case Shift -> (action.getStatus().index() << KIND_BITS) | SHIFT;
+            case Reduce -> (action.getProduction().index() << KIND_BITS) | REDUCE;
+        };
+    }
+
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private final int initState;
+    private final int[] terminalColumns;
+    private final int[] terminalCodes;
+    private final String[] nonTerminalNames;
+    private final int actionWidth;
+    private final IntBuffer actions;
+    private final int gotoWidth;
+    private final IntBuffer gotos;
+    private final int[] reduceLengths;
+    private final int[] reduceHeads;
+    // 对象形式的状态与产生式, 按需构造
+    private Status[] statuses = null;
+    private Production[] productions = null;
+}
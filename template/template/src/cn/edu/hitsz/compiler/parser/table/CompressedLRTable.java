@@ -0,0 +1,287 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * 以行位移 (row displacement, 又称 comb vector) 压缩的 LR 分析表
+ * <br>
+ * 稠密矩阵中绝大多数格子都是错误. 该类为每个状态选出一个默认动作: 若该行中有规约动作, 则出现次数最多的规约即为默认动作,
+ * 行中与默认动作相同的格子以及错误格子都不再存储 (与 yacc/bison 相同, 在本应报错的位置先执行默认规约, 错误会在之后的移入处被发现,
+ * 不会接受非法的输入). 剩下的格子按列号放入一个公共的一维数组, 每行选取一个偏移 base 使得各行的非空格子互不重叠,
+ * 再用一个 check 数组记录每个槽位属于哪一行:
+ * <pre>
+ * action(s, a) = check[base[s] + a] == s ? value[base[s] + a] : default[s]
+ * </pre>
+ * GOTO 表按列 (非终结符) 做同样的压缩, 每个非终结符的默认目标是该列中出现次数最多的状态.
+ * 正确的 LR 分析过程中不会查到 GOTO 表的错误格子, 因此默认目标可以覆盖它们.
+ * <br>
+ * 默认规约的代价也与 yacc/bison 相同: 对非法的输入, 报错之前观察者可能收到规范 LR(1) 表永远不会执行的规约.
+ * 例如 {@code a = 3 return a;} 在 return 处本应立即报错, 压缩表却先规约出 {@code S -> id = E}, IR 生成器因此多生成一条 MOV;
+ * {@code return 1} 缺少分号, 也会先生成一条 RET. 合法输入上的事件序列与稠密表完全相同.
+ * 观察者会在分析过程中产生输出, 且输入可能非法时, 应以 {@code compress(table, false)} 构造不使用默认规约的压缩表:
+ * 此时每行的默认动作都是错误, 所有非错误格子都存入公共数组, 报错位置与事件序列都与稠密表相同, 只是压缩率低一些.
+ * <br>
+ * 偏移采用 first-fit decreasing: 非空格子多的行先放置, 每行放在第一个不冲突的位置.
+ * 公共数组的末尾补齐一整行的宽度, 因此查表不需要边界检查, 仍然是 O(1) 的几次数组读取.
+ */
+public class CompressedLRTable implements LRLookupTable {
+    /**
+     * 压缩稠密形式的分析表, 使用默认规约
+     *
+     * @param table 编译后的分析表
+     * @return 压缩后的分析表
+     */
+    public static CompressedLRTable compress(CompiledLRTable table) {
+        return compress(table, true);
+    }
+
+    /**
+     * 压缩稠密形式的分析表
+     *
+     * @param table             编译后的分析表
+     * @param defaultReductions 是否以每行出现最多的规约作为默认动作; 为 false 时保留所有错误格子, 非法输入上不会多发出规约
+     * @return 压缩后的分析表
+     */
+    public static CompressedLRTable compress(CompiledLRTable table, boolean defaultReductions) {
+        final var stateCount = table.getStatusCount();
+        final var actionWidth = table.getTerminalCodes().length + 1;
+        final var nonTerminalCount = table.getNonTerminalNames().length;
+        final var actions = table.getActions();
+        final var gotos = table.getGotos();
+
+        // ACTION 表按行压缩, 行号为状态
+        final var defaultActions = new int[stateCount];
+        final var actionRows = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            final var row = new int[actionWidth];
+            actions.get(state * actionWidth, row);
+            defaultActions[state] = defaultReductions
+                ? mostFrequent(row, action -> CompiledLRTable.kindOf(action) == CompiledLRTable.REDUCE, CompiledLRTable.ERROR)
+                : CompiledLRTable.ERROR;
+            actionRows[state] = row;
+        }
+        final var actionPacking = pack(actionRows, defaultActions, CompiledLRTable.ERROR);
+
+        // GOTO 表按列压缩, 行号为非终结符, 列号为状态
+        final var defaultGotos = new int[nonTerminalCount];
+        final var gotoRows = new int[nonTerminalCount][];
+        for (int column = 0; column < nonTerminalCount; column++) {
+            final var row = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                row[state] = gotos.get(state * nonTerminalCount + column);
+            }
+            defaultGotos[column] = mostFrequent(row, target -> target >= 0, -1);
+            gotoRows[column] = row;
+        }
+        final var gotoPacking = pack(gotoRows, defaultGotos, -1);
+
+        return new CompressedLRTable(table, defaultActions, actionPacking, defaultGotos, gotoPacking);
+    }
+
+    @Override
+    public int action(int state, int terminalCode) {
+        final var index = actionBase[state] + terminalColumns[terminalCode + 1];
+        return actionCheck[index] == state ? actionValue[index] : defaultActions[state];
+    }
+
+    @Override
+    public int gotoState(int state, int nonTerminalColumn) {
+        final var index = gotoBase[nonTerminalColumn] + state;
+        return gotoCheck[index] == nonTerminalColumn ? gotoValue[index] : defaultGotos[nonTerminalColumn];
+    }
+
+    @Override
+    public int lengthOf(int production) {
+        return reduceLengths[production];
+    }
+
+    @Override
+    public int headOf(int production) {
+        return reduceHeads[production];
+    }
+
+    @Override
+    public int getInitState() {
+        return initState;
+    }
+
+    @Override
+    public int getStatusCount() {
+        return defaultActions.length;
+    }
+
+    /**
+     * 压缩表只保存查表所需的数组, Status 对象由原来的稠密表提供, 其中不包含默认规约
+     */
+    @Override
+    public Status getStatus(int state) {
+        return source.getStatus(state);
+    }
+
+    @Override
+    public Production getProduction(int production) {
+        return source.getProduction(production);
+    }
+
+    @Override
+    public long footprintBytes() {
+        return (long) Integer.BYTES * (terminalColumns.length
+            + defaultActions.length + actionBase.length + actionCheck.length + actionValue.length
+            + defaultGotos.length + gotoBase.length + gotoCheck.length + gotoValue.length
+            + reduceLengths.length + reduceHeads.length);
+    }
+
+    /**
+     * @return ACTION 与 GOTO 表中实际存储的 (非默认) 格子数
+     */
+    public int storedEntryCount() {
+        return actionEntries + gotoEntries;
+    }
+
+    /**
+     * @return 压缩前后的大小对比, 用于调试与评估
+     */
+    public String describe() {
+        final var dense = source.footprintBytes();
+        final var compressed = footprintBytes();
+        return "states=%d, stored entries=%d (action %d, goto %d), comb length=%d/%d, dense=%d bytes, compressed=%d bytes (%.1f%%)"
+            .formatted(getStatusCount(), storedEntryCount(), actionEntries, gotoEntries,
+                actionCheck.length, gotoCheck.length, dense, compressed, 100.0 * compressed / dense);
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 行位移压缩的结果: base 为每行的偏移, check 与 value 为公共数组, 未被占用的 check 槽位为 -1
+     */
+    private record Packing(int[] base, int[] check, int[] value, int entries) {
+    }
+
+    /**
+     * @param row       一行
+     * @param candidate 可以作为默认值的取值
+     * @param fallback  没有候选时的默认值
+     * @return 行中出现次数最多的候选值, 次数相同时取先出现者
+     */
+    private static int mostFrequent(int[] row, IntPredicate candidate, int fallback) {
+        final var counts = new HashMap<Integer, Integer>();
+        int best = fallback;
+        int bestCount = 0;
+        for (final var value : row) {
+            if (!candidate.test(value)) {
+                continue;
+            }
+            final int count = counts.merge(value, 1, Integer::sum);
+            if (count > bestCount) {
+                best = value;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param rows     各行的完整内容
+     * @param defaults 各行的默认值, 与之相同的格子不存储
+     * @param error    错误值, 这些格子同样不存储
+     * @return 压缩结果
+     */
+    private static Packing pack(int[][] rows, int[] defaults, int error) {
+        final var width = rows.length == 0 ? 0 : rows[0].length;
+        final var columnsOfRow = new int[rows.length][];
+        int entries = 0;
+        for (int r = 0; r < rows.length; r++) {
+            final var row = rows[r];
+            final var d = defaults[r];
+            columnsOfRow[r] = IntStream.range(0, width).filter(c -> row[c] != d && row[c] != error).toArray();
+            entries += columnsOfRow[r].length;
+        }
+
+        // first-fit decreasing: 非空格子多的行先放
+        final var order = IntStream.range(0, rows.length).boxed()
+            .sorted(Comparator.comparingInt((Integer r) -> -columnsOfRow[r].length).thenComparingInt(r -> r))
+            .mapToInt(Integer::intValue).toArray();
+
+        final var base = new int[rows.length];
+        final var occupied = new BitSet();
+        int length = width;
+        for (final var r : order) {
+            final var columns = columnsOfRow[r];
+            if (columns.length == 0) {
+                continue;
+            }
+
+            int offset = occupied.nextClearBit(columns[0]) - columns[0];
+            while (!fits(occupied, columns, offset)) {
+                offset = occupied.nextClearBit(offset + columns[0] + 1) - columns[0];
+            }
+            for (final var c : columns) {
+                occupied.set(offset + c);
+            }
+            base[r] = offset;
+            length = Math.max(length, offset + width);
+        }
+
+        final var check = new int[length];
+        final var value = new int[length];
+        Arrays.fill(check, -1);
+        for (int r = 0; r < rows.length; r++) {
+            for (final var c : columnsOfRow[r]) {
+                check[base[r] + c] = r;
+                value[base[r] + c] = rows[r][c];
+            }
+        }
+        return new Packing(base, check, value, entries);
+    }
+
+    private static boolean fits(BitSet occupied, int[] columns, int offset) {
+        for (final var c : columns) {
+            if (occupied.get(offset + c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CompressedLRTable(CompiledLRTable source, int[] defaultActions, Packing actionPacking,
+                              int[] defaultGotos, Packing gotoPacking) {
+        this.source = source;
+        this.initState = source.getInitState();
+        this.terminalColumns = source.getTerminalColumns();
+        this.reduceLengths = source.getReduceLengths();
+        this.reduceHeads = source.getReduceHeads();
+        this.defaultActions = defaultActions;
+        this.actionBase = actionPacking.base();
+        this.actionCheck = actionPacking.check();
+        this.actionValue = actionPacking.value();
+        this.actionEntries = actionPacking.entries();
+        this.defaultGotos = defaultGotos;
+        this.gotoBase = gotoPacking.base();
+        this.gotoCheck = gotoPacking.check();
+        this.gotoValue = gotoPacking.value();
+        this.gotoEntries = gotoPacking.entries();
+    }
+
+    private final CompiledLRTable source;
+    private final int initState;
+    private final int[] terminalColumns;
+    private final int[] reduceLengths;
+    private final int[] reduceHeads;
+
+    private final int[] defaultActions;
+    private final int[] actionBase;
+    private final int[] actionCheck;
+    private final int[] actionValue;
+    private final int actionEntries;
+
+    private final int[] defaultGotos;
+    private final int[] gotoBase;
+    private final int[] gotoCheck;
+    private final int[] gotoValue;
+    private final int gotoEntries;
+}
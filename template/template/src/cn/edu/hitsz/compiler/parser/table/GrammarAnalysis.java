@@ -0,0 +1,373 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 文法的 NULLABLE, FIRST 与 FOLLOW 集合
+ * <br>
+ * 集合以 long[] 位集表示, 下标为终结符在构造时给出的列表中的序号. 三者都以工作表迭代到不动点:
+ * <ul>
+ *     <li>NULLABLE: 为每条产生式记录体中尚未确定可空的符号数, 某个非终结符变为可空时只需更新它出现过的产生式</li>
+ *     <li>FIRST: 对 A -> X1 ... Xn, 在第一个不可空的符号之前 (含) 的终结符直接加入 FIRST(A),
+ *     非终结符 Xi 则建立 FIRST(Xi) 到 FIRST(A) 的边; 随后只沿着发生变化的集合的出边传播</li>
+ *     <li>FOLLOW: 对产生式体中的非终结符 Xi, FIRST(Xi+1 ... Xn) 直接加入 FOLLOW(Xi),
+ *     后缀可空时建立 FOLLOW(A) 到 FOLLOW(Xi) 的边, 传播方式同上</li>
+ * </ul>
+ * 每条边只在其源集合发生变化时才被重新处理, 总开销接近文法大小的线性. 产生式体可以为空 (epsilon 产生式).
+ * <br>
+ * 该类供 {@link TableGenerator} 与 {@link LRAutomaton} 构造分析表, 也可以单独用于检查文法.
+ */
+public class GrammarAnalysis {
+    /**
+     * 分析 grammar.txt 与码点文件所描述的文法
+     *
+     * @return 分析结果
+     */
+    public static GrammarAnalysis fromGrammarInfo() {
+        return new GrammarAnalysis(GrammarInfo.getProductionsInOrder(),
+            new ArrayList<>(GrammarInfo.getNonTerminals().values()),
+            new ArrayList<>(TokenKind.allAllowedTokenKinds().values()));
+    }
+
+    /**
+     * @param productions  产生式列表, 第一条产生式的头为开始符号
+     * @param nonTerminals 所有非终结符, 其顺序即各方法中非终结符序号的顺序
+     * @param terminals    所有终结符 (应包含 EOF), 其顺序即位集中终结符序号的顺序
+     */
+    public GrammarAnalysis(List<Production> productions, List<NonTerminal> nonTerminals, List<TokenKind> terminals) {
+        this.productions = productions;
+        this.nonTerminals = nonTerminals;
+        this.terminals = terminals;
+        this.words = (terminals.size() + 63) >>> 6;
+
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            nonTerminalIndex.put(nonTerminals.get(i), i);
+        }
+        for (int i = 0; i < terminals.size(); i++) {
+            terminalIndex.put(terminals.get(i), i);
+        }
+
+        nullable = new boolean[nonTerminals.size()];
+        first = new long[nonTerminals.size()][words];
+        follow = new long[nonTerminals.size()][words];
+
+        calcNullable();
+        calcFirst();
+        calcFollow();
+    }
+
+    /**
+     * @param nonTerminal 非终结符
+     * @return 它能否推出空串
+     */
+    public boolean isNullable(NonTerminal nonTerminal) {
+        return nullable[indexOf(nonTerminal)];
+    }
+
+    /**
+     * @param term 文法符号
+     * @return 它的 FIRST 集合, 终结符的 FIRST 集合就是它自身
+     */
+    public Set<TokenKind> getFirst(Term term) {
+        if (term instanceof TokenKind tokenKind) {
+            return Set.of(tokenKind);
+        }
+        return terminalsOf(first[indexOf((NonTerminal) term)]);
+    }
+
+    /**
+     * @param nonTerminal 非终结符
+     * @return 它的 FOLLOW 集合
+     */
+    public Set<TokenKind> getFollow(NonTerminal nonTerminal) {
+        return terminalsOf(follow[indexOf(nonTerminal)]);
+    }
+
+    /**
+     * @param sequence 文法符号串
+     * @return 它的 FIRST 集合
+     */
+    public Set<TokenKind> getFirst(List<Term> sequence) {
+        final var result = new long[words];
+        for (final var term : sequence) {
+            if (term instanceof TokenKind tokenKind) {
+                setBit(result, terminalIndexOf(tokenKind));
+                break;
+            }
+            final var n = indexOf((NonTerminal) term);
+            or(result, first[n]);
+            if (!nullable[n]) {
+                break;
+            }
+        }
+        return terminalsOf(result);
+    }
+
+    /**
+     * @param sequence 文法符号串
+     * @return 它能否推出空串
+     */
+    public boolean isNullable(List<Term> sequence) {
+        return sequence.stream().allMatch(term -> term instanceof NonTerminal nonTerminal && isNullable(nonTerminal));
+    }
+
+    /**
+     * 将各非终结符的 NULLABLE, FIRST 与 FOLLOW 打印到文件中, 用于调试文法
+     *
+     * @param path 输出路径
+     */
+    public void dump(String path) {
+        final var lines = new ArrayList<String>();
+        for (int n = 0; n < nonTerminals.size(); n++) {
+            lines.add("%s: nullable=%s first={%s} follow={%s}".formatted(nonTerminals.get(n), nullable[n],
+                joinTerminals(first[n]), joinTerminals(follow[n])));
+        }
+        FileUtils.writeLines(path, lines);
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    List<NonTerminal> getNonTerminals() {
+        return nonTerminals;
+    }
+
+    List<TokenKind> getTerminals() {
+        return terminals;
+    }
+
+    /**
+     * @return 各非终结符的 FIRST 位集, 下标为非终结符序号
+     */
+    long[][] getFirstBits() {
+        return first;
+    }
+
+    /**
+     * @return 各非终结符能否推出空串, 下标为非终结符序号
+     */
+    boolean[] getNullableBits() {
+        return nullable;
+    }
+
+    private void calcNullable() {
+        // remaining[p]: 产生式 p 的体中尚未确定可空的非终结符个数, 体中含终结符的产生式不可能可空, 不参与计数
+        final var remaining = new int[productions.size()];
+        final var occurrences = new ArrayList<List<Integer>>();
+        for (int n = 0; n < nonTerminals.size(); n++) {
+            occurrences.add(new ArrayList<>());
+        }
+
+        final var worklist = new ArrayDeque<Integer>();
+        for (int p = 0; p < productions.size(); p++) {
+            final var body = productions.get(p).body();
+            if (body.stream().anyMatch(term -> term instanceof TokenKind)) {
+                remaining[p] = -1;
+                continue;
+            }
+
+            remaining[p] = body.size();
+            for (final var term : body) {
+                occurrences.get(indexOf((NonTerminal) term)).add(p);
+            }
+            if (body.isEmpty()) {
+                markNullable(indexOf(productions.get(p).head()), worklist);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            final int n = worklist.pollFirst();
+            for (final var p : occurrences.get(n)) {
+                if (--remaining[p] == 0) {
+                    markNullable(indexOf(productions.get(p).head()), worklist);
+                }
+            }
+        }
+    }
+
+    private void markNullable(int n, ArrayDeque<Integer> worklist) {
+        if (!nullable[n]) {
+            nullable[n] = true;
+            worklist.addLast(n);
+        }
+    }
+
+    private void calcFirst() {
+        // edges[X]: FIRST(X) 需要并入的那些非终结符
+        final var edges = newEdges();
+        for (final var production : productions) {
+            final var head = indexOf(production.head());
+            for (final var term : production.body()) {
+                if (term instanceof TokenKind tokenKind) {
+                    setBit(first[head], terminalIndexOf(tokenKind));
+                    break;
+                }
+                final var n = indexOf((NonTerminal) term);
+                edges.get(n).add(head);
+                if (!nullable[n]) {
+                    break;
+                }
+            }
+        }
+
+        propagate(first, edges);
+    }
+
+    private void calcFollow() {
+        setBit(follow[indexOf(productions.get(0).head())], terminalIndexOf(TokenKind.eof()));
+
+        // edges[A]: FOLLOW(A) 需要并入的那些非终结符
+        final var edges = newEdges();
+        for (final var production : productions) {
+            final var head = indexOf(production.head());
+            final var body = production.body();
+
+            // 自右向左扫描, 维护当前后缀的 FIRST 集合与可空性
+            final var suffixFirst = new long[words];
+            boolean suffixNullable = true;
+            for (int i = body.size() - 1; i >= 0; i--) {
+                final var term = body.get(i);
+                if (term instanceof TokenKind tokenKind) {
+                    Arrays.fill(suffixFirst, 0);
+                    setBit(suffixFirst, terminalIndexOf(tokenKind));
+                    suffixNullable = false;
+                    continue;
+                }
+
+                final var n = indexOf((NonTerminal) term);
+                or(follow[n], suffixFirst);
+                if (suffixNullable) {
+                    edges.get(head).add(n);
+                }
+
+                if (nullable[n]) {
+                    or(suffixFirst, first[n]);
+                } else {
+                    System.arraycopy(first[n], 0, suffixFirst, 0, words);
+                    suffixNullable = false;
+                }
+            }
+        }
+
+        propagate(follow, edges);
+
+        // 对于找完所有产生式了都还没没有 follow 的非终结符
+        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
+        for (final var set : follow) {
+            if (isEmpty(set)) {
+                setBit(set, terminalIndexOf(TokenKind.eof()));
+            }
+        }
+    }
+
+    private List<List<Integer>> newEdges() {
+        final var edges = new ArrayList<List<Integer>>();
+        for (int n = 0; n < nonTerminals.size(); n++) {
+            edges.add(new ArrayList<>());
+        }
+        return edges;
+    }
+
+    /**
+     * 沿着 edges 将集合并入后继, 只重新处理发生了变化的集合
+     */
+    private void propagate(long[][] sets, List<List<Integer>> edges) {
+        final var worklist = new ArrayDeque<Integer>();
+        final var queued = new boolean[sets.length];
+        for (int n = 0; n < sets.length; n++) {
+            worklist.addLast(n);
+            queued[n] = true;
+        }
+
+        while (!worklist.isEmpty()) {
+            final int n = worklist.pollFirst();
+            queued[n] = false;
+            for (final var target : edges.get(n)) {
+                if (or(sets[target], sets[n]) && !queued[target]) {
+                    worklist.addLast(target);
+                    queued[target] = true;
+                }
+            }
+        }
+    }
+
+    private int indexOf(NonTerminal nonTerminal) {
+        final var index = nonTerminalIndex.get(nonTerminal);
+        if (index == null) {
+            throw new RuntimeException("Unknown non-terminal: " + nonTerminal);
+        }
+        return index;
+    }
+
+    private int terminalIndexOf(TokenKind terminal) {
+        final var index = terminalIndex.get(terminal);
+        if (index == null) {
+            throw new RuntimeException("Unknown terminal: " + terminal);
+        }
+        return index;
+    }
+
+    private Set<TokenKind> terminalsOf(long[] set) {
+        final var result = new LinkedHashSet<TokenKind>();
+        for (int t = 0; t < terminals.size(); t++) {
+            if ((set[t >>> 6] & (1L << t)) != 0) {
+                result.add(terminals.get(t));
+            }
+        }
+        return result;
+    }
+
+    private String joinTerminals(long[] set) {
+        return terminalsOf(set).stream().map(TokenKind::toString).collect(Collectors.joining(", "));
+    }
+
+    private static void setBit(long[] set, int bit) {
+        set[bit >>> 6] |= 1L << bit;
+    }
+
+    private static boolean isEmpty(long[] set) {
+        for (final var word : set) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * target |= source
+     *
+     * @return target 是否发生变化
+     */
+    private static boolean or(long[] target, long[] source) {
+        boolean changed = false;
+        for (int w = 0; w < target.length; w++) {
+            final var merged = target[w] | source[w];
+            changed |= merged != target[w];
+            target[w] = merged;
+        }
+        return changed;
+    }
+
+    private final List<Production> productions;
+    private final List<NonTerminal> nonTerminals;
+    private final List<TokenKind> terminals;
+    private final Map<NonTerminal, Integer> nonTerminalIndex = new HashMap<>();
+    private final Map<TokenKind, Integer> terminalIndex = new HashMap<>();
+    // 一个位集所占的 long 数量
+    private final int words;
+
+    private final boolean[] nullable;
+    private final long[][] first;
+    private final long[][] follow;
+}
@@ -27,10 +27,12 @@ public class GrammarInfo {
             final var line = lines.get(idx);
             // 形如 `A -> B ( id intConst ) C;` 的产生式
             // 先删除分号, 按 -> 切, 再按空格切 body
+            // 形如 `A -> ;` 的产生式体为空 (epsilon 产生式)
             final var withoutComma = line.replace(";", "");
-            final var words = withoutComma.split(" -> ");
-            final var headString = words[0];
-            final var bodyStrings = words[1].split(" ");
+            final var words = withoutComma.split("->", 2);
+            final var headString = words[0].trim();
+            final var bodyString = words.length > 1 ? words[1].trim() : "";
+            final var bodyStrings = bodyString.isEmpty() ? new String[0] : bodyString.split("\\s+");
 
             final var head = getOrCreateNonTerminal(headString);
 
@@ -47,6 +49,8 @@ public class GrammarInfo {
             final var production = new Production(idx + 1, head, body);
             productionsInOrder.add(production);
             productions.put(withoutComma, production);
+            // 同时以规范的文本 (即 Production.toString) 为键, 空产生式体在不同工具中的写法可能不同
+            productions.putIfAbsent(production.toString(), production);
         }
     }
 
@@ -0,0 +1,804 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * LR 自动机的构造引擎, 供 {@link TableGenerator} 使用
+ * <br>
+ * 所有数据都以整数编号表示:
+ * <ul>
+ *     <li>文法符号: 非终结符为 [0, N), 终结符为 [N, N + T), 编号顺序即构造时尝试各符号的顺序</li>
+ *     <li>产生式: 其在产生式列表中的下标</li>
+ *     <li>项目: 打包为一个 int, 高 16 位为产生式下标, 低 16 位为点的位置</li>
+ *     <li>核心: 排好序的项目数组, 哈希值预先算好</li>
+ *     <li>向前看符号集合: 以终结符序号为下标的 long[] 位集</li>
+ * </ul>
+ * 产生式按头部建立索引, 每个非终结符能经最左符号推出的非终结符集合 (左角) 预先算出,
+ * 因此求闭包只需合并几个位集; 每个状态的 GOTO 只在展开该状态时计算一次并记录在转移表中.
+ */
+final class LRAutomaton {
+    /**
+     * @param productions 产生式列表, 第一条为拓广产生式
+     * @param analysis    文法的 FIRST 与 NULLABLE 集合; 其非终结符与终结符的顺序即构造时尝试各符号的顺序
+     */
+    LRAutomaton(List<Production> productions, GrammarAnalysis analysis) {
+        this.productions = productions;
+        this.nonTerminals = analysis.getNonTerminals();
+        this.terminals = analysis.getTerminals();
+        final var first = analysis.getFirstBits();
+        final var nullable = analysis.getNullableBits();
+        this.nonTerminalCount = nonTerminals.size();
+        this.symbolCount = nonTerminalCount + terminals.size();
+        this.words = (terminals.size() + 63) >>> 6;
+
+        final var symbolIds = new HashMap<Term, Integer>();
+        for (int i = 0; i < nonTerminalCount; i++) {
+            symbolIds.put(nonTerminals.get(i), i);
+        }
+        for (int i = 0; i < terminals.size(); i++) {
+            symbolIds.put(terminals.get(i), nonTerminalCount + i);
+        }
+
+        // 产生式的头与体
+        final var productionCount = productions.size();
+        if (productionCount > ITEM_MASK + 1) {
+            throw new RuntimeException("Too many productions: " + productionCount);
+        }
+        heads = new int[productionCount];
+        bodies = new int[productionCount][];
+        for (int p = 0; p < productionCount; p++) {
+            final var production = productions.get(p);
+            heads[p] = symbolIds.get(production.head());
+            bodies[p] = production.body().stream().mapToInt(term -> {
+                final var id = symbolIds.get(term);
+                if (id == null) {
+                    throw new RuntimeException("Unknown term in production: " + production);
+                }
+                return id;
+            }).toArray();
+            if (bodies[p].length > ITEM_MASK) {
+                throw new RuntimeException("Production too long: " + production);
+            }
+        }
+
+        // 按头部索引产生式
+        final var counts = new int[nonTerminalCount];
+        for (final var head : heads) {
+            counts[head]++;
+        }
+        byHead = new int[nonTerminalCount][];
+        for (int n = 0; n < nonTerminalCount; n++) {
+            byHead[n] = new int[counts[n]];
+            counts[n] = 0;
+        }
+        for (int p = 0; p < productionCount; p++) {
+            byHead[heads[p]][counts[heads[p]]++] = p;
+        }
+
+        // 每个项目点之后的符号串的 FIRST 集合与可空性
+        suffixFirst = new long[productionCount][][];
+        suffixNullable = new boolean[productionCount][];
+        for (int p = 0; p < productionCount; p++) {
+            final var body = bodies[p];
+            suffixFirst[p] = new long[body.length + 1][];
+            suffixNullable[p] = new boolean[body.length + 1];
+            suffixFirst[p][body.length] = new long[words];
+            suffixNullable[p][body.length] = true;
+            for (int d = body.length - 1; d >= 0; d--) {
+                final var symbol = body[d];
+                final var set = new long[words];
+                if (symbol >= nonTerminalCount) {
+                    setBit(set, symbol - nonTerminalCount);
+                } else {
+                    or(set, first[symbol]);
+                    if (nullable[symbol]) {
+                        or(set, suffixFirst[p][d + 1]);
+                    }
+                }
+                suffixFirst[p][d] = set;
+                suffixNullable[p][d] = symbol < nonTerminalCount && nullable[symbol] && suffixNullable[p][d + 1];
+            }
+        }
+
+        // 左角: 每个非终结符经由产生式体的第一个符号能够到达的非终结符 (含自身), 以非终结符序号为下标的位集
+        final var ntWords = (nonTerminalCount + 63) >>> 6;
+        leftCorners = new long[nonTerminalCount][ntWords];
+        for (int n = 0; n < nonTerminalCount; n++) {
+            setBit(leftCorners[n], n);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productionCount; p++) {
+                if (bodies[p].length > 0 && bodies[p][0] < nonTerminalCount) {
+                    changed |= or(leftCorners[heads[p]], leftCorners[bodies[p][0]]);
+                }
+            }
+        }
+
+        serialWorkspace = new Workspace();
+    }
+
+    /**
+     * 构造自动机
+     *
+     * @param mode 分析表的种类; SLR 构造 LR(0) 自动机, 其余构造带向前看符号的 LR(1) 自动机
+     */
+    void build(TableGenerator.Mode mode) {
+        this.mode = mode;
+        final var withLookahead = mode != TableGenerator.Mode.SLR;
+
+        final var exact = new HashMap<Kernel, Integer>();
+        final var byCore = new HashMap<Kernel, List<Integer>>();
+        final var unexpanded = new ArrayDeque<Integer>();
+        var queued = new boolean[16];
+
+        final var initLookahead = withLookahead ? new long[words] : null;
+        if (withLookahead) {
+            setBit(initLookahead, terminals.indexOf(TokenKind.eof()));
+        }
+        addState(keyOf(new int[]{pack(0, 0)}, initLookahead), initLookahead, exact, byCore);
+        unexpanded.addLast(0);
+        queued[0] = true;
+
+        while (!unexpanded.isEmpty()) {
+            final int state = unexpanded.pollFirst();
+            queued[state] = false;
+
+            // 后继核心按符号编号的顺序给出, 也按这个顺序为新核心分配编号
+            final var targets = new int[symbolCount];
+            Arrays.fill(targets, -1);
+            for (final var successor : serialWorkspace.expand(state, withLookahead)) {
+                final var lookahead = successor.lookahead();
+
+                int target = findState(successor.key(), lookahead, exact, byCore);
+                if (target < 0) {
+                    target = addState(successor.key(), lookahead, exact, byCore);
+                    if (target >= queued.length) {
+                        queued = Arrays.copyOf(queued, queued.length * 2);
+                    }
+                    unexpanded.addLast(target);
+                    queued[target] = true;
+                } else if (withLookahead && or(kernelLookaheads.get(target), lookahead) && !queued[target]) {
+                    // 已有状态的向前看符号增加了, 需要重新展开以传播给它的后继
+                    unexpanded.addLast(target);
+                    queued[target] = true;
+                }
+                targets[successor.symbol()] = target;
+            }
+            transitions.set(state, targets);
+        }
+
+        if (mode == TableGenerator.Mode.MINIMAL_LR1) {
+            removeUnreachableStates();
+        }
+    }
+
+    /**
+     * 并行地构造自动机
+     * <br>
+     * 按 BFS 的层次推进: 同一层的各状态的闭包与后继核心互不相关, 分块提交到线程池中并行计算,
+     * 新核心先在并发哈希表中去重 (同一核心只保留一个对象, 之后的查找只需比较引用);
+     * 整层的所有块都完成后再按状态编号与符号编号的顺序串行地分配新状态的编号. 展开时各任务读取已有状态的核心与向前看符号,
+     * 而分配编号会向这些列表追加新状态, 因此两者不能重叠. 串行构造的队列恰好也是逐层, 按编号顺序处理的,
+     * 因此两者的状态编号完全相同, 生成的分析表逐字节一致.
+     * <br>
+     * LALR 与 MINIMAL_LR1 在合并向前看符号后需要重新展开已处理过的状态, 不是逐层推进的, 这两种模式退回串行构造.
+     *
+     * @param mode 分析表的种类
+     * @param pool 线程池
+     */
+    void build(TableGenerator.Mode mode, ForkJoinPool pool) {
+        if (mode == TableGenerator.Mode.LALR || mode == TableGenerator.Mode.MINIMAL_LR1) {
+            build(mode);
+            return;
+        }
+
+        this.mode = mode;
+        final var withLookahead = mode == TableGenerator.Mode.LR1;
+
+        final var exact = new HashMap<Kernel, Integer>();
+        final var discovered = new ConcurrentHashMap<Kernel, Kernel>();
+
+        final var initLookahead = withLookahead ? new long[words] : null;
+        if (withLookahead) {
+            setBit(initLookahead, terminals.indexOf(TokenKind.eof()));
+        }
+        final var initKey = keyOf(new int[]{pack(0, 0)}, initLookahead);
+        discovered.put(initKey, initKey);
+        addState(initKey, initLookahead, exact, null);
+
+        var frontier = List.of(0);
+        while (!frontier.isEmpty()) {
+            // 将这一层分块并行展开
+            final var level = frontier;
+            final var chunkSize = Math.max(1, level.size() / (pool.getParallelism() * CHUNKS_PER_WORKER));
+            final var tasks = new ArrayList<Callable<List<List<Successor>>>>();
+            for (int begin = 0; begin < level.size(); begin += chunkSize) {
+                final var from = begin;
+                final var to = Math.min(begin + chunkSize, level.size());
+                tasks.add(() -> {
+                    final var workspace = new Workspace();
+                    final var result = new ArrayList<List<Successor>>(to - from);
+                    for (int i = from; i < to; i++) {
+                        final var successors = workspace.expand(level.get(i), withLookahead);
+                        for (int j = 0; j < successors.size(); j++) {
+                            final var successor = successors.get(j);
+                            final var canonical = discovered.putIfAbsent(successor.key(), successor.key());
+                            if (canonical != null) {
+                                successors.set(j, new Successor(successor.symbol(), canonical, successor.lookahead()));
+                            }
+                        }
+                        result.add(successors);
+                    }
+                    return result;
+                });
+            }
+
+            // invokeAll 在所有块都完成 (或失败) 后才返回, 此后不再有任务读取状态列表
+            final var expandedLevel = new ArrayList<List<List<Successor>>>(tasks.size());
+            try {
+                for (final var chunk : pool.invokeAll(tasks)) {
+                    expandedLevel.add(chunk.get());
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Failed to construct LR automaton in parallel", e);
+            }
+
+            // 按顺序汇总, 串行地分配编号
+            final var next = new ArrayList<Integer>();
+            int position = 0;
+            for (final var expanded : expandedLevel) {
+                for (final var successors : expanded) {
+                    final var targets = new int[symbolCount];
+                    Arrays.fill(targets, -1);
+                    for (final var successor : successors) {
+                        var target = exact.get(successor.key());
+                        if (target == null) {
+                            target = addState(successor.key(), successor.lookahead(), exact, null);
+                            next.add(target);
+                        }
+                        targets[successor.symbol()] = target;
+                    }
+                    transitions.set(level.get(position++), targets);
+                }
+            }
+            frontier = next;
+        }
+    }
+
+    /**
+     * @return 状态数量
+     */
+    int stateCount() {
+        return kernels.size();
+    }
+
+    /**
+     * @param state  状态编号
+     * @param symbol 文法符号编号
+     * @return 该状态在该符号上转移到的状态, 没有转移时为 -1
+     */
+    int transition(int state, int symbol) {
+        return transitions.get(state)[symbol];
+    }
+
+    /**
+     * @return 非终结符数量, 也即第一个终结符的符号编号
+     */
+    int nonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    /**
+     * @return 文法符号数量
+     */
+    int symbolCount() {
+        return symbolCount;
+    }
+
+    /**
+     * 可供规约的项目的回调
+     */
+    interface ReductionConsumer {
+        /**
+         * @param production 可规约的产生式下标
+         * @param lookahead  向前看符号位集, LR(0) 自动机为 null
+         */
+        void accept(int production, long[] lookahead);
+    }
+
+    /**
+     * 依次给出某状态中点在末尾的项目; 同一产生式至多给出一次
+     *
+     * @param state    状态编号
+     * @param consumer 回调
+     */
+    void forEachReduction(int state, ReductionConsumer consumer) {
+        forEachItem(state, (item, lookahead) -> {
+            if (dotOf(item) == bodies[productionOf(item)].length) {
+                consumer.accept(productionOf(item), lookahead);
+            }
+        });
+    }
+
+    /**
+     * 项目的回调
+     */
+    interface ItemConsumer {
+        /**
+         * @param item      打包的项目
+         * @param lookahead 向前看符号位集, LR(0) 自动机为 null
+         */
+        void accept(int item, long[] lookahead);
+    }
+
+    /**
+     * 依次给出某状态闭包中的所有项目, 先给出核心项目
+     *
+     * @param state    状态编号
+     * @param consumer 回调
+     */
+    void forEachItem(int state, ItemConsumer consumer) {
+        final var items = kernels.get(state);
+        final var lookahead = kernelLookaheads.get(state);
+        final var withLookahead = lookahead != null;
+        final var closure = serialWorkspace.closeState(state, withLookahead);
+
+        for (int i = 0; i < items.length; i++) {
+            consumer.accept(items[i], withLookahead ? Arrays.copyOfRange(lookahead, i * words, (i + 1) * words) : null);
+        }
+        for (int n = 0; n < nonTerminalCount; n++) {
+            if (!testBit(closure, n)) {
+                continue;
+            }
+            for (final var p : byHead[n]) {
+                final var item = pack(p, 0);
+                if (Arrays.binarySearch(items, item) < 0) {
+                    consumer.accept(item, withLookahead ? serialWorkspace.scratchLookahead[n].clone() : null);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param item 打包的项目
+     * @return 形如 {@code A -> B . C} 的文本
+     */
+    String itemToString(int item) {
+        final var production = productions.get(productionOf(item));
+        final var builder = new StringBuilder();
+        builder.append(production.head()).append(" -> ");
+        final var body = production.body();
+        for (int i = 0; i < body.size(); i++) {
+            if (i == dotOf(item)) {
+                builder.append(" .");
+            }
+            builder.append(" ").append(body.get(i));
+        }
+        if (dotOf(item) == body.size()) {
+            builder.append(" .");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param lookahead 向前看符号位集
+     * @return 其中的终结符
+     */
+    List<TokenKind> terminalsOf(long[] lookahead) {
+        final var result = new ArrayList<TokenKind>();
+        for (int t = 0; t < terminals.size(); t++) {
+            if (testBit(lookahead, t)) {
+                result.add(terminals.get(t));
+            }
+        }
+        return result;
+    }
+
+    static int pack(int production, int dot) {
+        return (production << ITEM_BITS) | dot;
+    }
+
+    static int productionOf(int item) {
+        return item >>> ITEM_BITS;
+    }
+
+    static int dotOf(int item) {
+        return item & ITEM_MASK;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 核心, 带向前看符号时按 (项目, 向前看符号) 判等, 否则只按项目判等
+     */
+    private record Kernel(int[] items, long[] lookahead, int hash) {
+        static Kernel of(int[] items, long[] lookahead) {
+            return new Kernel(items, lookahead, 31 * Arrays.hashCode(items) + Arrays.hashCode(lookahead));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || obj instanceof Kernel kernel
+                && kernel.hash == hash
+                && Arrays.equals(kernel.items, items)
+                && Arrays.equals(kernel.lookahead, lookahead);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 一个后继核心
+     *
+     * @param symbol    转移所经的文法符号
+     * @param key       核心
+     * @param lookahead 核心项目的向前看符号, LR(0) 自动机为 null
+     */
+    private record Successor(int symbol, Kernel key, long[] lookahead) {
+    }
+
+    /**
+     * 展开状态时使用的临时空间, 并行构造时每个任务各用一个
+     */
+    private final class Workspace {
+        // 闭包中各非终结符的向前看符号
+        private final long[][] scratchLookahead = new long[nonTerminalCount][words];
+        // 闭包中的非终结符
+        private final long[] scratchClosure = new long[(nonTerminalCount + 63) >>> 6];
+        // 按点后的文法符号分桶的后继项目及其向前看符号
+        private final int[][] bucketItems = new int[symbolCount][];
+        private final int[] bucketSizes = new int[symbolCount];
+        private final long[][] bucketLookaheads = new long[symbolCount][];
+
+        private Workspace() {
+            for (int s = 0; s < symbolCount; s++) {
+                bucketItems[s] = new int[4];
+            }
+        }
+
+        /**
+         * 展开状态, 求出它在各文法符号上的后继核心
+         *
+         * @return 按符号编号排列的后继核心
+         */
+        private List<Successor> expand(int state, boolean withLookahead) {
+            fillBuckets(state, withLookahead);
+
+            final var result = new ArrayList<Successor>();
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                final var size = bucketSizes[symbol];
+                if (size == 0) {
+                    continue;
+                }
+
+                final var items = Arrays.copyOf(bucketItems[symbol], size);
+                final var lookahead = withLookahead ? Arrays.copyOf(bucketLookaheads[symbol], size * words) : null;
+                sortKernel(items, lookahead);
+                bucketSizes[symbol] = 0;
+                result.add(new Successor(symbol, keyOf(items, lookahead), lookahead));
+            }
+            return result;
+        }
+
+        /**
+         * 求状态的闭包中的非终结符 (返回 scratchClosure), 需要时同时求出各非终结符的向前看符号 (存入 scratchLookahead)
+         */
+        private long[] closeState(int state, boolean withLookahead) {
+            final var items = kernels.get(state);
+            final var lookahead = kernelLookaheads.get(state);
+            Arrays.fill(scratchClosure, 0);
+            for (final var item : items) {
+                final var body = bodies[productionOf(item)];
+                final var dot = dotOf(item);
+                if (dot < body.length && body[dot] < nonTerminalCount) {
+                    or(scratchClosure, leftCorners[body[dot]]);
+                }
+            }
+            if (!withLookahead) {
+                return scratchClosure;
+            }
+
+            for (int n = 0; n < nonTerminalCount; n++) {
+                if (testBit(scratchClosure, n)) {
+                    Arrays.fill(scratchLookahead[n], 0);
+                }
+            }
+
+            // 核心项目 [A -> alpha . B beta, L] 给 B 带来 FIRST(beta), beta 可空时还有 L
+            final var worklist = new ArrayDeque<Integer>();
+            for (int i = 0; i < items.length; i++) {
+                final var p = productionOf(items[i]);
+                final var dot = dotOf(items[i]);
+                if (dot < bodies[p].length && bodies[p][dot] < nonTerminalCount) {
+                    final var target = scratchLookahead[bodies[p][dot]];
+                    or(target, suffixFirst[p][dot + 1]);
+                    if (suffixNullable[p][dot + 1]) {
+                        orRange(target, lookahead, i * words);
+                    }
+                }
+            }
+            for (int n = 0; n < nonTerminalCount; n++) {
+                if (testBit(scratchClosure, n)) {
+                    worklist.addLast(n);
+                }
+            }
+
+            // 闭包项目 [B -> . C gamma, L(B)] 给 C 带来 FIRST(gamma), gamma 可空时还有 L(B), 迭代到不动点
+            while (!worklist.isEmpty()) {
+                final int n = worklist.pollFirst();
+                for (final var p : byHead[n]) {
+                    if (bodies[p].length == 0 || bodies[p][0] >= nonTerminalCount) {
+                        continue;
+                    }
+                    final var c = bodies[p][0];
+                    boolean changed = or(scratchLookahead[c], suffixFirst[p][1]);
+                    if (suffixNullable[p][1]) {
+                        changed |= or(scratchLookahead[c], scratchLookahead[n]);
+                    }
+                    if (changed) {
+                        worklist.addLast(c);
+                    }
+                }
+            }
+
+            return scratchClosure;
+        }
+
+        /**
+         * 展开状态, 将各后继核心的项目 (及向前看符号) 按点后的符号放入各桶
+         */
+        private void fillBuckets(int state, boolean withLookahead) {
+            final var items = kernels.get(state);
+            final var lookahead = kernelLookaheads.get(state);
+            final var closure = closeState(state, withLookahead);
+
+            for (int i = 0; i < items.length; i++) {
+                final var p = productionOf(items[i]);
+                final var dot = dotOf(items[i]);
+                if (dot < bodies[p].length) {
+                    addToBucket(bodies[p][dot], items[i] + 1, lookahead, i * words, withLookahead, false);
+                }
+            }
+            for (int n = 0; n < nonTerminalCount; n++) {
+                if (!testBit(closure, n)) {
+                    continue;
+                }
+                for (final var p : byHead[n]) {
+                    if (bodies[p].length > 0) {
+                        // 闭包项目恰好也是核心项目时 (只可能是拓广产生式), 两者会产生同一个后继项目
+                        final var inKernel = Arrays.binarySearch(items, pack(p, 0)) >= 0;
+                        addToBucket(bodies[p][0], pack(p, 1), scratchLookahead[n], 0, withLookahead, inKernel);
+                    }
+                }
+            }
+        }
+
+        private void addToBucket(int symbol, int item, long[] lookahead, int offset, boolean withLookahead, boolean mayDuplicate) {
+            final var size = bucketSizes[symbol];
+            // 后继项目已经在桶中时合并向前看符号
+            for (int i = 0; mayDuplicate && i < size; i++) {
+                if (bucketItems[symbol][i] == item) {
+                    if (withLookahead) {
+                        for (int w = 0; w < words; w++) {
+                            bucketLookaheads[symbol][i * words + w] |= lookahead[offset + w];
+                        }
+                    }
+                    return;
+                }
+            }
+
+            if (size == bucketItems[symbol].length) {
+                bucketItems[symbol] = Arrays.copyOf(bucketItems[symbol], size * 2);
+            }
+            bucketItems[symbol][size] = item;
+            if (withLookahead) {
+                if (bucketLookaheads[symbol] == null || bucketLookaheads[symbol].length < (size + 1) * words) {
+                    final var old = bucketLookaheads[symbol];
+                    bucketLookaheads[symbol] = old == null
+                        ? new long[Math.max(4, size + 1) * words]
+                        : Arrays.copyOf(old, Math.max(old.length * 2, (size + 1) * words));
+                }
+                System.arraycopy(lookahead, offset, bucketLookaheads[symbol], size * words, words);
+            }
+            bucketSizes[symbol] = size + 1;
+        }
+    }
+
+    /**
+     * 对核心项目排序, 向前看符号随之移动
+     */
+    private void sortKernel(int[] items, long[] lookahead) {
+        if (lookahead == null) {
+            Arrays.sort(items);
+            return;
+        }
+
+        // 核心通常很小, 插入排序即可
+        final var temp = new long[words];
+        for (int i = 1; i < items.length; i++) {
+            final var item = items[i];
+            System.arraycopy(lookahead, i * words, temp, 0, words);
+            int j = i - 1;
+            while (j >= 0 && items[j] > item) {
+                items[j + 1] = items[j];
+                System.arraycopy(lookahead, j * words, lookahead, (j + 1) * words, words);
+                j--;
+            }
+            items[j + 1] = item;
+            System.arraycopy(temp, 0, lookahead, (j + 1) * words, words);
+        }
+    }
+
+    /**
+     * @return 核心在查找表中的键: 规范 LR(1) 按项目与向前看符号判等, 其余模式只按项目判等
+     */
+    private Kernel keyOf(int[] items, long[] lookahead) {
+        return Kernel.of(items, mode == TableGenerator.Mode.LR1 ? lookahead : null);
+    }
+
+    private int findState(Kernel key, long[] lookahead, Map<Kernel, Integer> exact, Map<Kernel, List<Integer>> byCore) {
+        return switch (mode) {
+            case SLR, LR1 -> exact.getOrDefault(key, -1);
+            case LALR -> byCore.getOrDefault(key, List.of(-1)).get(0);
+            case MINIMAL_LR1 -> {
+                for (final var candidate : byCore.getOrDefault(key, List.of())) {
+                    if (isWeaklyCompatible(kernelLookaheads.get(candidate), lookahead, key.items().length)) {
+                        yield candidate;
+                    }
+                }
+                yield -1;
+            }
+        };
+    }
+
+    private int addState(Kernel key, long[] lookahead, Map<Kernel, Integer> exact, Map<Kernel, List<Integer>> byCore) {
+        final var state = kernels.size();
+        kernels.add(key.items());
+        kernelLookaheads.add(lookahead);
+        transitions.add(null);
+        switch (mode) {
+            case SLR, LR1 -> exact.put(key, state);
+            case LALR, MINIMAL_LR1 -> byCore.computeIfAbsent(key, k -> new ArrayList<>()).add(state);
+        }
+        return state;
+    }
+
+    /**
+     * Pager 的弱相容判定: 对核心中任意两个不同的项目 i, j, 若合并后 i 与 j 的向前看符号会相交,
+     * 则要求它们在合并前的某一个状态中就已经相交, 这样合并不会引入新的规约-规约冲突
+     */
+    private boolean isWeaklyCompatible(long[] a, long[] b, int size) {
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if ((intersects(a, i, b, j) || intersects(b, i, a, j)) && !intersects(a, i, a, j) && !intersects(b, i, b, j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean intersects(long[] a, int i, long[] b, int j) {
+        for (int w = 0; w < words; w++) {
+            if ((a[i * words + w] & b[j * words + w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重新传播之后有些状态可能不再可达, 按 BFS 顺序重新编号以去掉它们
+     */
+    private void removeUnreachableStates() {
+        final var newIndex = new int[kernels.size()];
+        Arrays.fill(newIndex, -1);
+        final var order = new ArrayList<Integer>();
+        newIndex[0] = 0;
+        order.add(0);
+        for (int i = 0; i < order.size(); i++) {
+            for (final var target : transitions.get(order.get(i))) {
+                if (target >= 0 && newIndex[target] < 0) {
+                    newIndex[target] = order.size();
+                    order.add(target);
+                }
+            }
+        }
+
+        final var newKernels = new ArrayList<int[]>();
+        final var newLookaheads = new ArrayList<long[]>();
+        final var newTransitions = new ArrayList<int[]>();
+        for (final var old : order) {
+            newKernels.add(kernels.get(old));
+            newLookaheads.add(kernelLookaheads.get(old));
+            final var targets = transitions.get(old).clone();
+            for (int s = 0; s < targets.length; s++) {
+                if (targets[s] >= 0) {
+                    targets[s] = newIndex[targets[s]];
+                }
+            }
+            newTransitions.add(targets);
+        }
+
+        kernels.clear();
+        kernels.addAll(newKernels);
+        kernelLookaheads.clear();
+        kernelLookaheads.addAll(newLookaheads);
+        transitions.clear();
+        transitions.addAll(newTransitions);
+    }
+
+    private static void setBit(long[] set, int bit) {
+        set[bit >>> 6] |= 1L << bit;
+    }
+
+    private static boolean testBit(long[] set, int bit) {
+        return (set[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * target |= source
+     *
+     * @return target 是否发生变化
+     */
+    private static boolean or(long[] target, long[] source) {
+        boolean changed = false;
+        for (int w = 0; w < target.length; w++) {
+            final var merged = target[w] | source[w];
+            changed |= merged != target[w];
+            target[w] = merged;
+        }
+        return changed;
+    }
+
+    private static void orRange(long[] target, long[] source, int offset) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= source[offset + w];
+        }
+    }
+
+    // 并行构造时每个工作线程平均分到的块数
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final int ITEM_BITS = 16;
+    private static final int ITEM_MASK = (1 << ITEM_BITS) - 1;
+
+    private final List<Production> productions;
+    private final List<NonTerminal> nonTerminals;
+    private final List<TokenKind> terminals;
+    private final int nonTerminalCount;
+    private final int symbolCount;
+    // 一个向前看符号位集所占的 long 数量
+    private final int words;
+
+    private final int[] heads;
+    private final int[][] bodies;
+    private final int[][] byHead;
+    private final long[][][] suffixFirst;
+    private final boolean[][] suffixNullable;
+    private final long[][] leftCorners;
+
+    private TableGenerator.Mode mode;
+    private final List<int[]> kernels = new ArrayList<>();
+    // 每个核心项目的向前看符号依次排列在同一个数组中, LR(0) 自动机为 null
+    private final List<long[]> kernelLookaheads = new ArrayList<>();
+    private final List<int[]> transitions = new ArrayList<>();
+
+    // 串行构造与遍历项目时复用的临时空间
+    private final Workspace serialWorkspace;
+}
@@ -0,0 +1,62 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+/**
+ * 驱动程序所需的 O(1) 查表接口
+ * <br>
+ * 动作的编码见 {@link CompiledLRTable}. 目前有稠密矩阵形式的 {@link CompiledLRTable}
+ * 与行位移压缩形式的 {@link CompressedLRTable} 两种实现.
+ */
+public interface LRLookupTable {
+    /**
+     * @param state        当前状态
+     * @param terminalCode 当前词法单元类型的码点
+     * @return 编码后的动作
+     */
+    int action(int state, int terminalCode);
+
+    /**
+     * @param state             规约后栈顶的状态
+     * @param nonTerminalColumn 规约出的非终结符的序号, 见 {@link #headOf(int)}
+     * @return 应转移到的状态, 错误时为 -1
+     */
+    int gotoState(int state, int nonTerminalColumn);
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式体的长度, 即规约时要弹出的状态数
+     */
+    int lengthOf(int production);
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式头的非终结符序号
+     */
+    int headOf(int production);
+
+    /**
+     * @return 起始状态
+     */
+    int getInitState();
+
+    /**
+     * @return 状态数量
+     */
+    int getStatusCount();
+
+    /**
+     * @param state 状态编号
+     * @return 对应的 Status 对象, 用于通知观察者
+     */
+    Status getStatus(int state);
+
+    /**
+     * @param production 产生式编号
+     * @return 对应的 Production 对象, 用于通知观察者
+     */
+    Production getProduction(int production);
+
+    /**
+     * @return 查表所用的各数组占用的字节数
+     */
+    long footprintBytes();
+}
@@ -76,6 +76,20 @@ public class LRTable {
         }
     }
 
+    //==================== 以下为实现相关代码 ==============================//
+
+    List<Status> getStatusInIndexOrder() {
+        return statusInIndexOrder;
+    }
+
+    List<TokenKind> getTerminals() {
+        return terminals;
+    }
+
+    List<NonTerminal> getNonTerminals() {
+        return nonTerminals;
+    }
+
     LRTable(List<Status> statusInIndexOrder, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
         this.statusInIndexOrder = statusInIndexOrder;
         this.terminals = terminals;
@@ -0,0 +1,269 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 编译后 LR 分析表的二进制缓存
+ * <br>
+ * 读取 CSV 分析表需要逐行切分字符串并逐个构造 Status/Action 对象, 文法较大时这部分占据了启动时间的大头.
+ * 该类将 {@link CompiledLRTable} 的各个稠密数组原样写入一个二进制文件, 之后的运行只需将文件映射进内存.
+ * 占据绝大部分空间的 ACTION 表与 GOTO 表不再复制到堆中, 分析表直接通过 IntBuffer 视图读取映射的页面,
+ * 这些页面由操作系统的页缓存提供, 同时运行的多个编译器进程共享同一份物理内存; 其余几个很小的数组则复制出来.
+ * <br>
+ * 文件头中记录了语法文件与码点文件内容的 SHA-256 摘要, 以及 CSV 分析表的大小与修改时间. 每次启动只需读取两个很小的文件,
+ * 不必读取整个 CSV 分析表; 摘要或 CSV 的大小, 修改时间不匹配 (或缓存文件不存在, 损坏) 时回退到读取 CSV,
+ * 若 CSV 也不存在则使用 {@link TableGenerator} 从语法文件构造, 然后重新写入缓存.
+ * <br>
+ * 缓存文件先写入同目录下的临时文件再原子地重命名, 因此多个编译器进程可以同时只读地映射同一个缓存文件,
+ * 不会读到写了一半的内容; 已映射旧文件的进程在重命名后仍然读取旧文件的内容. 缓存文件不应被原地改写或截断.
+ * <br>
+ * 文件格式 (本机字节序, 使映射区域上的 IntBuffer 视图读取时不必交换字节; 其它字节序的机器写出的文件因魔数不匹配而被重建):
+ * <pre>
+ * int     魔数, 版本号
+ * byte[]  32 字节的摘要
+ * long    CSV 分析表的字节数与修改时间 (毫秒), 不存在时均为 -1
+ * int     起始状态, 状态数, 终结符数, 非终结符数, 码点列映射长度, 产生式槽位数, 非终结符名字的字节数
+ * int[]   码点列映射, 终结符码点, ACTION 表, GOTO 表, 产生式体长度, 产生式头序号
+ * byte[]  以换行分隔的非终结符名字 (UTF-8)
+ * </pre>
+ */
+public class LRTableCache {
+    /**
+     * 读取分析表, 优先使用缓存
+     *
+     * @param cachePath 缓存文件路径
+     * @param tablePath CSV 格式的分析表路径, 文件不存在时从语法文件构造分析表
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable load(String cachePath, String tablePath) {
+        final var key = computeKey();
+        final var stamp = TableStamp.of(Path.of(tablePath));
+        final var cached = read(Path.of(cachePath), key, stamp);
+        if (cached != null) {
+            return cached;
+        }
+
+        final LRTable table;
+        if (Files.exists(Path.of(tablePath))) {
+            table = new TableLoader().load(tablePath);
+        } else {
+            final var generator = new TableGenerator();
+            generator.run();
+            table = generator.getTable();
+        }
+
+        final var compiled = CompiledLRTable.compile(table);
+        write(Path.of(cachePath), key, stamp, compiled);
+        return compiled;
+    }
+
+    /**
+     * CSV 分析表的大小与修改时间, 用于判断缓存是否比 CSV 旧; CSV 可能很大, 不对其内容求摘要
+     *
+     * @param size     字节数, 文件不存在时为 -1
+     * @param modified 修改时间 (毫秒), 文件不存在时为 -1
+     */
+    record TableStamp(long size, long modified) {
+        static TableStamp of(Path table) {
+            try {
+                if (!Files.exists(table)) {
+                    return new TableStamp(-1, -1);
+                }
+                return new TableStamp(Files.size(table), Files.getLastModifiedTime(table).toMillis());
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + table, e);
+            }
+        }
+    }
+
+    /**
+     * @return 语法文件与码点文件内容的摘要
+     */
+    static byte[] computeKey() {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            for (final var path : new String[]{FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH}) {
+                final var file = Path.of(path);
+                if (Files.exists(file)) {
+                    digest.update(Files.readAllBytes(file));
+                }
+                // 以分隔符区分各文件的边界
+                digest.update((byte) 0);
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on computing key of LR table", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param path  缓存文件路径
+     * @param key   期望的摘要
+     * @param stamp 当前 CSV 分析表的大小与修改时间
+     * @return 读出的分析表, 文件不存在, 摘要或 CSV 的大小与修改时间不匹配, 或内容损坏时返回 null
+     */
+    static CompiledLRTable read(Path path, byte[] key, TableStamp stamp) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.nativeOrder());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            final var fileKey = new byte[KEY_LENGTH];
+            buffer.get(fileKey);
+            if (!Arrays.equals(fileKey, key) || !new TableStamp(buffer.getLong(), buffer.getLong()).equals(stamp)) {
+                return null;
+            }
+
+            final var initState = buffer.getInt();
+            final var statusCount = buffer.getInt();
+            final var terminalCount = buffer.getInt();
+            final var nonTerminalCount = buffer.getInt();
+            final var columnMapLength = buffer.getInt();
+            final var productionSlots = buffer.getInt();
+            final var namesLength = buffer.getInt();
+            if (Math.min(Math.min(Math.min(statusCount, terminalCount), Math.min(nonTerminalCount, columnMapLength)),
+                Math.min(productionSlots, namesLength)) < 0 || initState < 0 || initState >= statusCount) {
+                return null;
+            }
+
+            // 各数组连续存放; 小数组整块复制出来, ACTION 表与 GOTO 表直接使用映射区域上的视图
+            final var ints = buffer.asIntBuffer();
+            final var terminalColumns = readInts(ints, columnMapLength);
+            final var terminalCodes = readInts(ints, terminalCount);
+            final var actions = viewInts(ints, Math.multiplyExact(statusCount, terminalCount + 1));
+            final var gotos = viewInts(ints, Math.multiplyExact(statusCount, nonTerminalCount));
+            final var reduceLengths = readInts(ints, productionSlots);
+            final var reduceHeads = readInts(ints, productionSlots);
+            buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+
+            final var names = new byte[namesLength];
+            buffer.get(names);
+            final var nonTerminalNames = nonTerminalCount == 0
+                ? new String[0]
+                : new String(names, StandardCharsets.UTF_8).split("\n", -1);
+            if (nonTerminalNames.length != nonTerminalCount) {
+                return null;
+            }
+
+            return new CompiledLRTable(initState, terminalColumns, terminalCodes, nonTerminalNames,
+                actions, gotos, reduceLengths, reduceHeads);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ArithmeticException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 将分析表写入缓存文件
+     *
+     * @param path  缓存文件路径
+     * @param key   摘要
+     * @param stamp CSV 分析表的大小与修改时间
+     * @param table 编译后的分析表
+     */
+    static void write(Path path, byte[] key, TableStamp stamp, CompiledLRTable table) {
+        final var terminalColumns = table.getTerminalColumns();
+        final var terminalCodes = table.getTerminalCodes();
+        final var actions = table.getActions();
+        final var gotos = table.getGotos();
+        final var reduceLengths = table.getReduceLengths();
+        final var reduceHeads = table.getReduceHeads();
+        final var names = String.join("\n", table.getNonTerminalNames()).getBytes(StandardCharsets.UTF_8);
+
+        final var intCount = HEADER_INTS + terminalColumns.length + terminalCodes.length + actions.limit()
+            + gotos.limit() + reduceLengths.length + reduceHeads.length;
+        final var buffer = ByteBuffer.allocate(KEY_LENGTH + STAMP_LONGS * Long.BYTES + intCount * Integer.BYTES
+            + names.length).order(ByteOrder.nativeOrder());
+        buffer.putInt(MAGIC).putInt(VERSION).put(key).putLong(stamp.size()).putLong(stamp.modified());
+        buffer.putInt(table.getInitState())
+            .putInt(table.getStatusCount())
+            .putInt(terminalCodes.length)
+            .putInt(table.getNonTerminalNames().length)
+            .putInt(terminalColumns.length)
+            .putInt(reduceLengths.length)
+            .putInt(names.length);
+
+        final var ints = buffer.asIntBuffer();
+        ints.put(terminalColumns).put(terminalCodes).put(actions.duplicate().rewind()).put(gotos.duplicate().rewind())
+            .put(reduceLengths).put(reduceHeads);
+        buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+        buffer.put(names);
+        buffer.flip();
+
+        Path temp = null;
+        try {
+            final var directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            // 临时文件默认只有所有者可读, 缓存需要能被其它进程共享读取
+            temp.toFile().setReadable(true, false);
+            try (final var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // 缓存只用于加速, 写入失败 (如缓存目录只读) 时下次运行照常回退到 CSV 即可
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static int[] readInts(IntBuffer ints, int length) {
+        final var result = new int[length];
+        ints.get(result);
+        return result;
+    }
+
+    /**
+     * @return 从 ints 的当前位置开始, 长度为 length 的视图, 与 ints 共享底层的存储; ints 的位置随之后移
+     */
+    private static IntBuffer viewInts(IntBuffer ints, int length) {
+        final var result = ints.slice(ints.position(), length);
+        ints.position(ints.position() + length);
+        return result;
+    }
+
+    private static final int MAGIC = 0x4C525442;
+    private static final int VERSION = 2;
+    private static final int KEY_LENGTH = 32;
+    private static final int STAMP_LONGS = 2;
+    private static final int HEADER_INTS = 2 + 7;
+
+    private LRTableCache() {
+    }
+}
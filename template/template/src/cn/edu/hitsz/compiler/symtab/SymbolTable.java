@@ -14,7 +14,8 @@ import java.util.*;
  */
 public class SymbolTable {
 
-    public Map<String, SymbolTableEntry> symbolTable = new HashMap<>();
+    // 保持条目的加入顺序, 使得合并多个符号表的结果是确定的
+    public Map<String, SymbolTableEntry> symbolTable = new LinkedHashMap<>();
 
     /**
      * 获取符号表中已有的条目
@@ -40,12 +41,109 @@ public class SymbolTable {
      */
     public SymbolTableEntry add(String text) {
         if(!has(text)){
-            return symbolTable.put(text,new SymbolTableEntry(text));
+            final var entry = new SymbolTableEntry(text);
+            symbolTable.put(text, entry);
+            putIndex(entry, text.hashCode());
+            return entry;
         }else{
             throw new NotImplementedException();
         }
     }
 
+    /**
+     * 查找以字符区间表示的符号的条目, 若不存在则新增
+     * <br>
+     * 与 {@code has}/{@code add} 不同, 该方法直接在字符区间上查找, 只有在符号第一次出现时才会构造字符串,
+     * 供词法分析在源程序缓冲区上原地登记标识符.
+     *
+     * @param chars  字符缓冲区
+     * @param offset 符号的起始位置
+     * @param length 符号的长度
+     * @return 该符号在符号表中的条目
+     */
+    public SymbolTableEntry intern(char[] chars, int offset, int length) {
+        // 与 String.hashCode 一致的哈希, 使得以字符串加入的条目也能被找到
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        final var mask = index.length - 1;
+        for (int slot = spread(hash) & mask; index[slot] != null; slot = (slot + 1) & mask) {
+            if (indexHashes[slot] == hash && textEquals(index[slot].getText(), chars, offset, length)) {
+                return index[slot];
+            }
+        }
+
+        return add(new String(chars, offset, length));
+    }
+
+    /**
+     * 按加入顺序将另一个符号表中本表尚未包含的条目并入本表
+     *
+     * @param other 另一个符号表
+     * @return 本表中新增的条目, 按加入顺序排列
+     */
+    public List<SymbolTableEntry> merge(SymbolTable other) {
+        final var added = new ArrayList<SymbolTableEntry>();
+        for (final var entry : other.getAllEntries().values()) {
+            if (!has(entry.getText())) {
+                final var merged = add(entry.getText());
+                if (entry.getType() != null) {
+                    merged.setType(entry.getType());
+                }
+                added.add(merged);
+            }
+        }
+        return added;
+    }
+
+    // 以字符区间为键的开放寻址索引, 与 symbolTable 中的条目一一对应, 供 intern 使用
+    private SymbolTableEntry[] index = new SymbolTableEntry[16];
+    private int[] indexHashes = new int[16];
+    private int indexSize = 0;
+
+    private void putIndex(SymbolTableEntry entry, int hash) {
+        // 装载因子不超过 1/2
+        if ((indexSize + 1) * 2 > index.length) {
+            final var oldIndex = index;
+            final var oldHashes = indexHashes;
+            index = new SymbolTableEntry[oldIndex.length * 2];
+            indexHashes = new int[oldIndex.length * 2];
+            indexSize = 0;
+            for (int slot = 0; slot < oldIndex.length; slot++) {
+                if (oldIndex[slot] != null) {
+                    putIndex(oldIndex[slot], oldHashes[slot]);
+                }
+            }
+        }
+
+        final var mask = index.length - 1;
+        int slot = spread(hash) & mask;
+        while (index[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry;
+        indexHashes[slot] = hash;
+        indexSize++;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean textEquals(String text, char[] chars, int offset, int length) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 判断符号表中有无条目
      *
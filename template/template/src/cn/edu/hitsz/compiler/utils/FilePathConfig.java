@@ -62,6 +62,16 @@ public final class FilePathConfig {
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * 编译后 LR 分析表的二进制缓存
+     */
+    public static final String LR_TABLE_CACHE_PATH = "data/out/lr_table.bin";
+
+    /**
+     * 语法分析事件日志
+     */
+    public static final String PARSE_EVENT_LOG_PATH = "data/out/parse_events.bin";
+
     private FilePathConfig() {
     }
 }